@@ -4,7 +4,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Random;
+import java.util.SplittableRandom;
 
 /**
  * Manager for all the tasks repeating and scheduled.
@@ -16,10 +16,17 @@ public class Scheduler implements Tickable {
 
 	private long tickCount;
 	
-	private Random random = new Random();
+	private SplittableRandom random;
 	private Map<Long, ScheduledTask> scheduledTasks = new HashMap<>();
 	private Map<Long, ScheduledTask> repeatingTasks = new HashMap<>();
 	
+	/**
+	 * @param random The random the task ids are drawn from.
+	 */
+	public Scheduler(SplittableRandom random) {
+		this.random = random;
+	}
+	
 	/**
 	 * Schedules the defined {@code runnable} to be executed after {@code delay} ticks
 	 * 
@@ -1,12 +1,22 @@
 package fr.qmf.yokai;
 
-import java.util.Random;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
+import fr.qmf.yokai.game.GameController;
 import fr.qmf.yokai.game.GameStorage;
+import fr.qmf.yokai.game.gui.layers.GameLayer;
 import fr.qmf.yokai.game.gui.layers.MainTitleLayer;
 import fr.qmf.yokai.io.KeyboardCallback;
 import fr.qmf.yokai.io.Textures;
 import fr.qmf.yokai.io.audio.SoundManager;
+import fr.qmf.yokai.io.save.GameJournal;
+import fr.qmf.yokai.io.save.SaveWriter;
 import fr.qmf.yokai.ui.Window;
 
 /**
@@ -26,6 +36,28 @@ public class YokaiGame implements Runnable {
 	private GameStorage gameStorage;
 	private SoundManager soundManager;
 	
+	private SaveWriter saveWriter = new SaveWriter();
+	// Files to save to or load from, asked for by other threads and handled at the next tick.
+	private AtomicReference<Path> saveRequest = new AtomicReference<>();
+	private AtomicReference<Path> loadRequest = new AtomicReference<>();
+	private CompletableFuture<Path> pendingSave;
+	private CompletableFuture<GameStorage> pendingLoad;
+	
+	// Every game played is journaled action by action, see GameController.
+	private GameJournal journal = new GameJournal(Paths.get("state.journal"), saveWriter, GameJournal.DEFAULT_CHECKPOINT_INTERVAL);
+	private AtomicBoolean recoverRequest = new AtomicBoolean();
+	private CompletableFuture<GameStorage> pendingRecover;
+	
+	// Undo and redo asked for by the keyboard, played at the next tick like every other action.
+	private AtomicBoolean undoRequest = new AtomicBoolean();
+	private AtomicBoolean redoRequest = new AtomicBoolean();
+	
+	/**
+	 * Where every random choice comes from: each part of the game gets a stream split from it.
+	 * It is not thread-safe: the game loop only uses the streams split from it.
+	 */
+	private SplittableRandom random = new SplittableRandom();
+	
 	/**
 	 * How much times a second should the game update its logic
 	 */
@@ -47,9 +79,9 @@ public class YokaiGame implements Runnable {
 		
 		window.setCurrentLayer(new MainTitleLayer(this, window));
 		
-		soundManager = new SoundManager(new Random());
+		soundManager = new SoundManager(random.split());
 		
-		scheduler = new Scheduler();
+		scheduler = new Scheduler(random.split());
 		
 		new Thread(this, "YokaiGame").start();
 	}
@@ -99,6 +131,8 @@ public class YokaiGame implements Runnable {
 	}
 	
 	private void update() {
+		updateHistory();
+		updateSaves();
 		scheduler.tick();
 		
 		if(window.getCurrentLayer() instanceof Tickable) {
@@ -108,6 +142,118 @@ public class YokaiGame implements Runnable {
 		soundManager.tick();
 	}
 
+	/**
+	 * Undoes or redoes the actions asked for, on the game loop which plays every action of the game.
+	 */
+	private void updateHistory() {
+		boolean undo = undoRequest.getAndSet(false), redo = redoRequest.getAndSet(false);
+		if(!(window.getCurrentLayer() instanceof GameLayer)) return;
+		
+		GameController controller = ((GameLayer) window.getCurrentLayer()).getController();
+		if(undo) {
+			controller.undo();
+		}
+		if(redo) {
+			controller.redo();
+		}
+	}
+	
+	/**
+	 * Handles the saves, loads and recoveries asked for and commits the journal,
+	 * between two ticks so that the game is never saved half updated.
+	 * The game is saved from a snapshot written on another thread, and what is done is reported here.
+	 * A request waits for the previous one to be done.
+	 */
+	private void updateSaves() {
+		if(pendingSave == null) {
+			Path path = saveRequest.getAndSet(null);
+			if(path != null && gameStorage != null) {
+				pendingSave = saveWriter.save(gameStorage.fork(), path);
+			}
+		} else if(pendingSave.isDone()) {
+			try {
+				pendingSave.join();
+			} catch (CompletionException e) {
+				e.getCause().printStackTrace();
+			}
+			pendingSave = null;
+		}
+		
+		if(pendingLoad == null) {
+			Path path = loadRequest.getAndSet(null);
+			if(path != null) {
+				pendingLoad = saveWriter.load(path);
+			}
+		} else if(pendingLoad.isDone()) {
+			try {
+				setGameStorage(pendingLoad.join());
+				window.setCurrentLayer(new GameLayer(this, new GameController(this), window));
+			} catch (CompletionException e) {
+				e.getCause().printStackTrace();
+			}
+			pendingLoad = null;
+		}
+		
+		if(pendingRecover == null) {
+			if(recoverRequest.getAndSet(false)) {
+				pendingRecover = journal.recover();
+			}
+		} else if(pendingRecover.isDone()) {
+			try {
+				setGameStorage(pendingRecover.join());
+				window.setCurrentLayer(new GameLayer(this, new GameController(this), window));
+			} catch (CompletionException e) {
+				e.getCause().printStackTrace();
+			}
+			pendingRecover = null;
+		}
+		
+		journal.commit();
+	}
+	
+	/**
+	 * Asks for the game to be saved at the next tick, without waiting for it. May be called from any thread.
+	 * @param path
+	 */
+	public void requestSave(Path path) {
+		saveRequest.set(path);
+	}
+	
+	/**
+	 * Asks for a game to be loaded, without waiting for it: it replaces the current one once read.
+	 * May be called from any thread.
+	 * @param path
+	 */
+	public void requestLoad(Path path) {
+		loadRequest.set(path);
+	}
+	
+	/**
+	 * Asks for the journaled game to be recovered, see {@link GameJournal#recover()}: it is played on once read.
+	 * May be called from any thread.
+	 */
+	public void requestRecover() {
+		recoverRequest.set(true);
+	}
+	
+	/**
+	 * Asks for the last action to be undone at the next tick. May be called from any thread.
+	 */
+	public void requestUndo() {
+		undoRequest.set(true);
+	}
+	
+	/**
+	 * Asks for the last undone action to be redone at the next tick. May be called from any thread.
+	 */
+	public void requestRedo() {
+		redoRequest.set(true);
+	}
+	
+	public GameJournal getJournal() {
+		return journal;
+	}
+	
 	public GameStorage getGameStorage() {
 		return gameStorage;
 	}
@@ -120,6 +266,10 @@ public class YokaiGame implements Runnable {
 		this.gameStorage = gameStorage;
 	}
 	
+	public SplittableRandom getRandom() {
+		return random;
+	}
+	
 	public SoundManager getSoundManager() {
 		return soundManager;
 	}
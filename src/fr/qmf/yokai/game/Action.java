@@ -0,0 +1,91 @@
+package fr.qmf.yokai.game;
+
+/**
+ * The actions of a {@link GameEngine}, packed in a long so that lists of them are plain arrays.
+ * The type of the action takes the 4 upper bits, then come up to four arguments of 15 bits each,
+ * coords being signed: they must stay between -16384 and 16383, which centering the board ensures.
+ * @author LeFlo
+ *
+ */
+public class Action {
+
+	public static final int OBSERVE = 0; // Arguments: x1, y1, x2, y2.
+	public static final int MOVE = 1; // Arguments: fromX, fromY, toX, toY.
+	public static final int DRAW_HINT = 2; // No argument.
+	public static final int PLACE_HINT = 3; // Arguments: index of the hint in the discovered ones, x, y.
+	public static final int DECLARE_PEACE = 4; // No argument.
+
+	private static final int ARGUMENT_BITS = 15;
+	private static final long ARGUMENT_MASK = (1L << ARGUMENT_BITS) - 1;
+
+	private Action() {}
+
+	public static long observe(int x1, int y1, int x2, int y2) {
+		return pack(OBSERVE, x1, y1, x2, y2);
+	}
+
+	public static long move(int fromX, int fromY, int toX, int toY) {
+		return pack(MOVE, fromX, fromY, toX, toY);
+	}
+
+	public static long drawHint() {
+		return pack(DRAW_HINT, 0, 0, 0, 0);
+	}
+
+	/**
+	 * @param hintIndex the index of the hint in {@link GameStorage#getDiscoveredHints()}.
+	 * @param x
+	 * @param y
+	 * @return the action.
+	 */
+	public static long placeHint(int hintIndex, int x, int y) {
+		return pack(PLACE_HINT, hintIndex, x, y, 0);
+	}
+
+	public static long declarePeace() {
+		return pack(DECLARE_PEACE, 0, 0, 0, 0);
+	}
+
+	/**
+	 * @param action
+	 * @return the type of the action, e.g. {@link #MOVE}.
+	 */
+	public static int getType(long action) {
+		return (int) (action >>> 4*ARGUMENT_BITS);
+	}
+
+	/**
+	 * @param action
+	 * @param i between 0 and 3.
+	 * @return the i-th argument of the action.
+	 */
+	public static int getArgument(long action, int i) {
+		int shift = (3 - i)*ARGUMENT_BITS;
+		// Shifts the argument to the top then back down to get its sign.
+		return (int) ((action << (64 - ARGUMENT_BITS - shift)) >> (64 - ARGUMENT_BITS));
+	}
+
+	/**
+	 * @param action
+	 * @return a readable description of the action, e.g. for logs.
+	 */
+	public static String toString(long action) {
+		switch(getType(action)) {
+		case OBSERVE: return "observe(" + getArgument(action, 0) + ", " + getArgument(action, 1) + ", " + getArgument(action, 2) + ", " + getArgument(action, 3) + ")";
+		case MOVE: return "move(" + getArgument(action, 0) + ", " + getArgument(action, 1) + ", " + getArgument(action, 2) + ", " + getArgument(action, 3) + ")";
+		case DRAW_HINT: return "drawHint()";
+		case PLACE_HINT: return "placeHint(" + getArgument(action, 0) + ", " + getArgument(action, 1) + ", " + getArgument(action, 2) + ")";
+		case DECLARE_PEACE: return "declarePeace()";
+		default: return "unknown(" + action + ")";
+		}
+	}
+
+	private static long pack(int type, int a, int b, int c, int d) {
+		return ((long) type << 4*ARGUMENT_BITS)
+				| ((a & ARGUMENT_MASK) << 3*ARGUMENT_BITS)
+				| ((b & ARGUMENT_MASK) << 2*ARGUMENT_BITS)
+				| ((c & ARGUMENT_MASK) << ARGUMENT_BITS)
+				| (d & ARGUMENT_MASK);
+	}
+
+}
@@ -0,0 +1,229 @@
+package fr.qmf.yokai.game;
+
+/**
+ * Lists every legal action of a game in its current stage, see {@link Action}, into an array given by the caller.
+ * Its own arrays are only allocated when the cards outgrow them, so listing actions makes no garbage.
+ * No card may be dragged while actions are listed.
+ * @author LeFlo
+ *
+ */
+public class ActionGenerator {
+
+	private final GameStorage storage;
+
+	// Offsets of the cells on the right, left, down and up.
+	private static final int[] DIRECTION_X = {1, -1, 0, 0};
+	private static final int[] DIRECTION_Y = {0, 0, 1, -1};
+
+	private int[] neighbors = new int[0]; // Index of the card in each direction of each card, -1 for none.
+
+	// Empty cells next to the deck, with the number of cards next to each, the index of one of them and every one of them.
+	private int[] frontierX = new int[0], frontierY = new int[0];
+	private int[] frontierCardCounts = new int[0], frontierCards = new int[0];
+	private int[] frontierNeighbors = new int[0];
+	private int frontierSize;
+
+	// Groups of cards once a card holding the deck together is lifted.
+	private int[] groups = new int[0];
+	private int[] queue = new int[0];
+
+	private long[] actions;
+	private int count;
+
+	/**
+	 * @param storage the game to list the actions of.
+	 */
+	public ActionGenerator(GameStorage storage) {
+		this.storage = storage;
+	}
+
+	/**
+	 * Lists the legal actions:
+	 * observing any two cards without hint in {@link GameStage#PLAY_OR_GUESS} and {@link GameStage#OBSERVING},
+	 * moving any card without hint to any cell keeping the cards connected in {@link GameStage#MOVING},
+	 * drawing a hint or placing any discovered hint on any card without hint in {@link GameStage#HINT},
+	 * and declaring peace, listed last, in {@link GameStage#PLAY_OR_GUESS}.
+	 * @param actions the array to fill, from 0.
+	 * @return the number of legal actions, which may be more than the length of the array:
+	 * only the ones that fit are written.
+	 */
+	public int generate(long[] actions) {
+		this.actions = actions;
+		count = 0;
+
+		switch(storage.getCurrentStage()) {
+		case PLAY_OR_GUESS:
+			generateObservations();
+			add(Action.declarePeace());
+			break;
+		case OBSERVING:
+			generateObservations();
+			break;
+		case MOVING:
+			generateMoves();
+			break;
+		case HINT:
+			generateHints();
+			break;
+		case END:
+			return 0;
+		}
+
+		this.actions = null;
+		return count;
+	}
+
+	private void generateObservations() {
+		int cardCount = storage.getCardCount();
+		for(int i = 0; i < cardCount; i++) {
+			if(storage.getCard(i).hasHint()) continue;
+			int x1 = storage.getCardX(i), y1 = storage.getCardY(i);
+			for(int j = i + 1; j < cardCount; j++) {
+				if(storage.getCard(j).hasHint()) continue;
+				add(Action.observe(x1, y1, storage.getCardX(j), storage.getCardY(j)));
+			}
+		}
+	}
+
+	/**
+	 * A card whose removal keeps the deck connected may go to any empty cell next to another card.
+	 * The other cards hold the deck together: they may only go to a cell next to every group of cards they leave.
+	 */
+	private void generateMoves() {
+		computeFrontier();
+		int cardCount = storage.getCardCount();
+		for(int i = 0; i < cardCount; i++) {
+			if(storage.getCard(i).hasHint()) continue;
+			int x = storage.getCardX(i), y = storage.getCardY(i);
+
+			if(storage.isLiftable(x, y)) {
+				for(int f = 0; f < frontierSize; f++) {
+					if(frontierCardCounts[f] == 1 && frontierCards[f] == i) continue;
+					add(Action.move(x, y, frontierX[f], frontierY[f]));
+				}
+			} else {
+				int everyGroup = (1 << labelGroups(i)) - 1;
+				for(int f = 0; f < frontierSize; f++) {
+					int touched = 0;
+					for(int direction = 0; direction < 4; direction++) {
+						int neighbor = frontierNeighbors[4*f + direction];
+						if(neighbor != -1 && neighbor != i) touched |= 1 << groups[neighbor];
+					}
+					if(touched == everyGroup) {
+						add(Action.move(x, y, frontierX[f], frontierY[f]));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Splits the cards in the groups they form once a card is lifted.
+	 * @param lifted the index of the lifted card.
+	 * @return the number of groups, at most 4 since each one is next to the lifted card.
+	 */
+	private int labelGroups(int lifted) {
+		int cardCount = storage.getCardCount();
+		for(int i = 0; i < cardCount; i++) {
+			groups[i] = -1;
+		}
+
+		int groupCount = 0;
+		for(int direction = 0; direction < 4; direction++) {
+			int start = neighbors[4*lifted + direction];
+			if(start == -1 || groups[start] != -1) continue;
+
+			// Breadth-First-Search from the card next to the lifted one, around the lifted one.
+			int head = 0, tail = 0;
+			queue[tail++] = start;
+			groups[start] = groupCount;
+			while(head < tail) {
+				int card = queue[head++];
+				for(int around = 0; around < 4; around++) {
+					int neighbor = neighbors[4*card + around];
+					if(neighbor != -1 && neighbor != lifted && groups[neighbor] == -1) {
+						groups[neighbor] = groupCount;
+						queue[tail++] = neighbor;
+					}
+				}
+			}
+			groupCount++;
+		}
+		return groupCount;
+	}
+
+	private void generateHints() {
+		if(storage.getDiscoveredHints().size() + storage.getPlacedHints().size() < storage.getHints().length) {
+			add(Action.drawHint());
+		}
+		int hintCount = storage.getDiscoveredHints().size();
+		int cardCount = storage.getCardCount();
+		for(int h = 0; h < hintCount; h++) {
+			for(int i = 0; i < cardCount; i++) {
+				if(storage.getCard(i).hasHint()) continue;
+				add(Action.placeHint(h, storage.getCardX(i), storage.getCardY(i)));
+			}
+		}
+	}
+
+	/**
+	 * Finds the cards next to each card, then lists each empty cell next to a card once,
+	 * from the card with the lowest index next to it.
+	 */
+	private void computeFrontier() {
+		int cardCount = storage.getCardCount();
+		// Each card has 4 cells around it.
+		if(frontierX.length < 4*cardCount) {
+			frontierX = new int[4*cardCount];
+			frontierY = new int[4*cardCount];
+			frontierCardCounts = new int[4*cardCount];
+			frontierCards = new int[4*cardCount];
+			frontierNeighbors = new int[16*cardCount];
+			neighbors = new int[4*cardCount];
+			groups = new int[cardCount];
+			queue = new int[cardCount];
+		}
+
+		for(int i = 0; i < cardCount; i++) {
+			int x = storage.getCardX(i), y = storage.getCardY(i);
+			for(int direction = 0; direction < 4; direction++) {
+				neighbors[4*i + direction] = storage.getCardIndex(x + DIRECTION_X[direction], y + DIRECTION_Y[direction]);
+			}
+		}
+
+		frontierSize = 0;
+		for(int i = 0; i < cardCount; i++) {
+			int x = storage.getCardX(i), y = storage.getCardY(i);
+			for(int direction = 0; direction < 4; direction++) {
+				if(neighbors[4*i + direction] != -1) continue;
+				int cellX = x + DIRECTION_X[direction];
+				int cellY = y + DIRECTION_Y[direction];
+
+				int cardsAround = 0;
+				boolean first = true;
+				for(int around = 0; around < 4 && first; around++) {
+					int neighbor = storage.getCardIndex(cellX + DIRECTION_X[around], cellY + DIRECTION_Y[around]);
+					frontierNeighbors[4*frontierSize + around] = neighbor;
+					if(neighbor == -1) continue;
+					cardsAround++;
+					first = neighbor >= i;
+				}
+				if(!first) continue;
+
+				frontierX[frontierSize] = cellX;
+				frontierY[frontierSize] = cellY;
+				frontierCardCounts[frontierSize] = cardsAround;
+				frontierCards[frontierSize] = i;
+				frontierSize++;
+			}
+		}
+	}
+
+	private void add(long action) {
+		if(count < actions.length) {
+			actions[count] = action;
+		}
+		count++;
+	}
+
+}
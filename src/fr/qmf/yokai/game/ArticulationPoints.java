@@ -0,0 +1,100 @@
+package fr.qmf.yokai.game;
+
+/**
+ * Finds the cards that hold the deck together, i.e. the cards whose removal splits
+ * their group of cards in two or more. It is an iterative Tarjan Depth-First-Search
+ * over the cards of a {@link CardMap}, cards being dragged left out,
+ * whose arrays are only allocated when the cards outgrow them.
+ * @author LeFlo
+ *
+ */
+public class ArticulationPoints {
+
+	private final CardMap cards;
+	private int[] order = new int[0]; // Discovery order of each card, 0 if not discovered.
+	private int[] low = new int[0]; // Lowest order reachable from each card subtree with one back edge.
+	private int[] parents = new int[0];
+	private int[] directions = new int[0]; // Next direction to explore for each card on the stack.
+	private int[] stack = new int[0];
+	private boolean[] points = new boolean[0];
+
+	/**
+	 * @param cards the cards to search.
+	 */
+	public ArticulationPoints(CardMap cards) {
+		this.cards = cards;
+	}
+
+	/**
+	 * Computes the articulation points of the cards, two cards being linked when they are orthogonally next to each other.
+	 * They are then given by {@link #isArticulationPoint(int)}.
+	 */
+	public void compute() {
+		int size = cards.size();
+		if(order.length < size) {
+			int capacity = cards.capacity();
+			order = new int[capacity];
+			low = new int[capacity];
+			parents = new int[capacity];
+			directions = new int[capacity];
+			stack = new int[capacity];
+			points = new boolean[capacity];
+		}
+		for(int index = 0; index < size; index++) {
+			order[index] = 0;
+			points[index] = false;
+		}
+
+		int time = 0;
+		for(int root = 0; root < size; root++) {
+			if(order[root] != 0 || cards.isMoving(root)) continue;
+
+			int rootChildren = 0;
+			int height = 0;
+			order[root] = low[root] = ++time;
+			parents[root] = -1;
+			directions[root] = 0;
+			stack[height++] = root;
+
+			while(height > 0) {
+				int index = stack[height - 1];
+				if(directions[index] < 4) {
+					int neighbor = cards.indexOf(CardMap.neighbor(cards.getKey(index), directions[index]++));
+					if(neighbor == -1 || cards.isMoving(neighbor)) continue;
+
+					if(order[neighbor] == 0) {
+						parents[neighbor] = index;
+						order[neighbor] = low[neighbor] = ++time;
+						directions[neighbor] = 0;
+						stack[height++] = neighbor;
+						if(index == root) rootChildren++;
+					} else if(neighbor != parents[index]) {
+						low[index] = Math.min(low[index], order[neighbor]);
+					}
+				} else {
+					height--;
+					int parent = parents[index];
+					if(parent != -1) {
+						low[parent] = Math.min(low[parent], low[index]);
+						if(parent != root && low[index] >= order[parent]) {
+							points[parent] = true;
+						}
+					}
+				}
+			}
+
+			if(rootChildren > 1) {
+				points[root] = true;
+			}
+		}
+	}
+
+	/**
+	 * @param index the index of a card.
+	 * @return true if the card was an articulation point on the last {@link #compute()}.
+	 */
+	public boolean isArticulationPoint(int index) {
+		return index < points.length && points[index];
+	}
+
+}
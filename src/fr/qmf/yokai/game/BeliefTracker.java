@@ -0,0 +1,269 @@
+package fr.qmf.yokai.game;
+
+/**
+ * Keeps track of the families each card may still be from what a player has seen, e.g. for bots.
+ * The families a card may be are its domain, a bitmask of families as hints are.
+ * Observing a card narrows its domain to its family and, if hints are trusted, a hint put on a card narrows it to the hinted families.
+ * As each family has {@link Variant#getCardsPerFamily()} cards, narrowing a domain may narrow others:
+ * a family whose cards are all found is taken off the other domains,
+ * and a family with as many candidates as cards fills all of them.
+ * Only the families whose counts changed are propagated again, so an update costs a few passes over the cards, not an enumeration of the deals.
+ * A hint contradicting what was seen is ignored.
+ * Card indexes do not change while the game is played, so domains follow the cards as they move.
+ * @author LeFlo
+ *
+ */
+public class BeliefTracker implements GameListener {
+
+	private final GameStorage storage;
+	private final int seat;
+	private final boolean trustingHints;
+	private final int familyCount;
+	private final int cardsPerFamily;
+
+	private final long[] domains; // Families each card may be, by card index.
+	private final int[] observedFamilies; // Family of each card seen, -1 for the others.
+	private final int[] fixedCounts; // Number of cards which may only be the family, by family.
+	private final int[] candidateCounts; // Number of cards which may be the family, by family.
+
+	// Families to propagate, each once at most.
+	private final int[] queue;
+	private final boolean[] queued;
+	private int queueSize;
+	private boolean contradicted;
+
+	/**
+	 * @param storage the game to track, already initialized.
+	 * @param seat the id of the player whose observations are tracked, -1 to track every observation.
+	 * @param trustingHints true if the hints put on cards tell the truth, as a careful partner makes them.
+	 */
+	public BeliefTracker(GameStorage storage, int seat, boolean trustingHints) {
+		this.storage = storage;
+		this.seat = seat;
+		this.trustingHints = trustingHints;
+		familyCount = storage.getVariant().getFamilyCount();
+		cardsPerFamily = storage.getVariant().getCardsPerFamily();
+
+		int cardCount = storage.getCardCount();
+		domains = new long[cardCount];
+		observedFamilies = new int[cardCount];
+		fixedCounts = new int[familyCount];
+		candidateCounts = new int[familyCount];
+		queue = new int[familyCount];
+		queued = new boolean[familyCount];
+
+		for(int i = 0; i < cardCount; i++) {
+			observedFamilies[i] = -1;
+		}
+		rebuild();
+	}
+
+	@Override
+	public void cardsObserved(int x1, int y1, int x2, int y2) {
+		if(seat != -1 && storage.getCurrentPlayer().getId() != seat) return;
+		observe(storage.getCardIndex(x1, y1));
+		observe(storage.getCardIndex(x2, y2));
+		propagate();
+	}
+
+	@Override
+	public void hintPlaced(long hint, int x, int y) {
+		if(!trustingHints) return;
+		narrow(storage.getCardIndex(x, y), hint);
+		propagate();
+	}
+
+	/**
+	 * @param cardX
+	 * @param cardY
+	 * @return the bitmask of the families the card at these coords may be, 0 if there is no card.
+	 */
+	public long getDomain(int cardX, int cardY) {
+		int index = storage.getCardIndex(cardX, cardY);
+		return index == -1 ? 0 : domains[index];
+	}
+
+	/**
+	 * @param index the index of a card, see {@link GameStorage#getCard(int)}.
+	 * @return the bitmask of the families the card may be.
+	 */
+	public long getDomain(int index) {
+		return domains[index];
+	}
+
+	/**
+	 * @param index the index of a card.
+	 * @return the family of the card if it may only be one, -1 otherwise.
+	 */
+	public int getKnownFamily(int index) {
+		long domain = domains[index];
+		return Long.bitCount(domain) == 1 ? Long.numberOfTrailingZeros(domain) : -1;
+	}
+
+	/**
+	 * Estimates the probability of a card to be of a family: each family of its domain is weighted
+	 * by its cards left to find over the cards which may still be it.
+	 * This is exact for a card alone, not for the deck as a whole, which would take enumerating the deals.
+	 * @param index the index of a card.
+	 * @param family
+	 * @return the probability, between 0 and 1.
+	 */
+	public double getProbability(int index, int family) {
+		long domain = domains[index];
+		if((domain & (1L << family)) == 0) return 0;
+		if(Long.bitCount(domain) == 1) return 1;
+
+		double total = 0;
+		for(long rest = domain; rest != 0; rest &= rest - 1) {
+			total += getWeight(Long.numberOfTrailingZeros(rest));
+		}
+		return total == 0 ? 0 : getWeight(family) / total;
+	}
+
+	/**
+	 * @return the cards of the family left to find, over the cards not found yet which may be it.
+	 */
+	private double getWeight(int family) {
+		int open = candidateCounts[family] - fixedCounts[family];
+		return open == 0 ? 0 : (cardsPerFamily - fixedCounts[family]) / (double) open;
+	}
+
+	public int getSeat() {
+		return seat;
+	}
+
+	public boolean isTrustingHints() {
+		return trustingHints;
+	}
+
+	private void observe(int index) {
+		int family = storage.getCard(index).getFamily();
+		observedFamilies[index] = family;
+		narrow(index, 1L << family);
+	}
+
+	/**
+	 * Narrows the domain of a card, queueing the families whose counts change.
+	 * @param index
+	 * @param allowed the families the card may be.
+	 */
+	private void narrow(int index, long allowed) {
+		long domain = domains[index];
+		long narrowed = domain & allowed;
+		if(narrowed == domain) return;
+		if(narrowed == 0) {
+			contradicted = true;
+			return;
+		}
+
+		for(long removed = domain & ~narrowed; removed != 0; removed &= removed - 1) {
+			int family = Long.numberOfTrailingZeros(removed);
+			candidateCounts[family]--;
+			enqueue(family);
+		}
+		if(Long.bitCount(narrowed) == 1) {
+			int family = Long.numberOfTrailingZeros(narrowed);
+			fixedCounts[family]++;
+			enqueue(family);
+		}
+		domains[index] = narrowed;
+	}
+
+	private void enqueue(int family) {
+		if(!queued[family]) {
+			queued[family] = true;
+			queue[queueSize++] = family;
+		}
+	}
+
+	/**
+	 * Propagates the counts of the queued families, starting over from what was seen on a contradiction.
+	 */
+	private void propagate() {
+		if(!propagateQueue()) {
+			rebuild();
+		}
+	}
+
+	/**
+	 * Propagates the counts of the queued families until nothing changes.
+	 * @return false on a contradiction, the queue being emptied.
+	 */
+	private boolean propagateQueue() {
+		while(queueSize > 0 && !contradicted) {
+			int family = queue[--queueSize];
+			queued[family] = false;
+			long bit = 1L << family;
+
+			if(fixedCounts[family] > cardsPerFamily || candidateCounts[family] < cardsPerFamily) {
+				contradicted = true;
+			} else if(fixedCounts[family] == cardsPerFamily && candidateCounts[family] > cardsPerFamily) {
+				// Every card of the family is found: the others are not of it.
+				for(int i = 0; i < domains.length; i++) {
+					if((domains[i] & bit) != 0 && domains[i] != bit) {
+						narrow(i, ~bit);
+					}
+				}
+			} else if(candidateCounts[family] == cardsPerFamily && fixedCounts[family] < cardsPerFamily) {
+				// Every card which may be of the family is of it.
+				for(int i = 0; i < domains.length; i++) {
+					if((domains[i] & bit) != 0) {
+						narrow(i, bit);
+					}
+				}
+			}
+		}
+
+		if(contradicted) {
+			while(queueSize > 0) {
+				queued[queue[--queueSize]] = false;
+			}
+			contradicted = false;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Computes every domain again from the observed cards, then adds the trusted hints one by one,
+	 * skipping the ones contradicting the others.
+	 */
+	private void rebuild() {
+		long everyFamily = familyCount == 64 ? -1L : (1L << familyCount) - 1;
+		for(int i = 0; i < domains.length; i++) {
+			domains[i] = everyFamily;
+		}
+		for(int family = 0; family < familyCount; family++) {
+			fixedCounts[family] = familyCount == 1 ? domains.length : 0;
+			candidateCounts[family] = domains.length;
+			enqueue(family);
+		}
+		for(int i = 0; i < domains.length; i++) {
+			if(observedFamilies[i] != -1) {
+				narrow(i, 1L << observedFamilies[i]);
+			}
+		}
+		// What was seen never contradicts itself.
+		propagateQueue();
+		if(!trustingHints) return;
+
+		long[] savedDomains = new long[domains.length];
+		int[] savedFixedCounts = new int[familyCount];
+		int[] savedCandidateCounts = new int[familyCount];
+		for(int i = 0; i < domains.length; i++) {
+			long hint = storage.getCard(i).getHint();
+			if(hint == 0) continue;
+
+			System.arraycopy(domains, 0, savedDomains, 0, domains.length);
+			System.arraycopy(fixedCounts, 0, savedFixedCounts, 0, familyCount);
+			System.arraycopy(candidateCounts, 0, savedCandidateCounts, 0, familyCount);
+			narrow(i, hint);
+			if(!propagateQueue()) {
+				System.arraycopy(savedDomains, 0, domains, 0, domains.length);
+				System.arraycopy(savedFixedCounts, 0, fixedCounts, 0, familyCount);
+				System.arraycopy(savedCandidateCounts, 0, candidateCounts, 0, familyCount);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,306 @@
+package fr.qmf.yokai.game;
+
+/**
+ * A square set of board cells stored as bits, one bit per cell, row after row.
+ * The side has to be a power of two no greater than 64 so that a row never spans two words.
+ * Every operation works in place on the receiver so that checking rules creates no garbage.
+ * @author LeFlo
+ *
+ */
+public class BitBoard {
+
+	private final int size;
+	private final int shift; // log2(size), used to compute cell indexes.
+	private final long[] words;
+
+	private final long firstColumn; // Bits of the cells with x == 0 inside a single word.
+	private final long lastColumn; // Bits of the cells with x == size-1 inside a single word.
+	private final long rowMask; // The size lower bits.
+
+	/**
+	 * Creates an empty BitBoard.
+	 * @param size the side of the board, a power of two between 8 and 64.
+	 */
+	public BitBoard(int size) {
+		if(size < 8 || size > 64 || Integer.bitCount(size) != 1) {
+			throw new IllegalArgumentException("BitBoard size must be a power of two between 8 and 64, got " + size);
+		}
+		this.size = size;
+		this.shift = Integer.numberOfTrailingZeros(size);
+		this.words = new long[size * size / 64];
+
+		long column = 0;
+		for(int i = 0; i < 64; i += size) {
+			column |= 1L << i;
+		}
+		this.firstColumn = column;
+		this.lastColumn = column << (size - 1);
+		this.rowMask = size == 64 ? -1L : (1L << size) - 1;
+	}
+
+	/**
+	 * Creates a BitBoard with the same size and bits as the given one.
+	 * @param other the BitBoard to copy.
+	 */
+	public BitBoard(BitBoard other) {
+		this(other.size);
+		copy(other);
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Checks if the given coords are inside the board bounds.
+	 * @param x
+	 * @param y
+	 * @return true if the coords lays inside the board bounds.
+	 */
+	public boolean isInside(int x, int y) {
+		return x >= 0 && x < size && y >= 0 && y < size;
+	}
+
+	/**
+	 * Gets the index of a cell, as used by {@link #get(int)} and {@link #nextSetBit(int)}.
+	 * @param x
+	 * @param y
+	 * @return the cell index.
+	 */
+	public int index(int x, int y) {
+		return (y << shift) | x;
+	}
+
+	public int getX(int index) {
+		return index & (size - 1);
+	}
+
+	public int getY(int index) {
+		return index >>> shift;
+	}
+
+	/**
+	 * @param x
+	 * @param y
+	 * @return true if the cell is set, false if not set or outside the board.
+	 */
+	public boolean get(int x, int y) {
+		return isInside(x, y) && get(index(x, y));
+	}
+
+	public boolean get(int index) {
+		return (words[index >>> 6] & (1L << index)) != 0;
+	}
+
+	public void set(int x, int y) {
+		set(index(x, y));
+	}
+
+	public void set(int index) {
+		words[index >>> 6] |= 1L << index;
+	}
+
+	public void clear(int x, int y) {
+		clear(index(x, y));
+	}
+
+	public void clear(int index) {
+		words[index >>> 6] &= ~(1L << index);
+	}
+
+	/**
+	 * Unsets every cell.
+	 */
+	public void clear() {
+		for(int i = 0; i < words.length; i++) {
+			words[i] = 0;
+		}
+	}
+
+	/**
+	 * Sets this BitBoard bits to the given one's.
+	 * @param other a BitBoard of the same size.
+	 */
+	public void copy(BitBoard other) {
+		System.arraycopy(other.words, 0, words, 0, words.length);
+	}
+
+	public void or(BitBoard other) {
+		for(int i = 0; i < words.length; i++) {
+			words[i] |= other.words[i];
+		}
+	}
+
+	public void and(BitBoard other) {
+		for(int i = 0; i < words.length; i++) {
+			words[i] &= other.words[i];
+		}
+	}
+
+	public void andNot(BitBoard other) {
+		for(int i = 0; i < words.length; i++) {
+			words[i] &= ~other.words[i];
+		}
+	}
+
+	public boolean intersects(BitBoard other) {
+		for(int i = 0; i < words.length; i++) {
+			if((words[i] & other.words[i]) != 0) return true;
+		}
+		return false;
+	}
+
+	public boolean isEmpty() {
+		for(int i = 0; i < words.length; i++) {
+			if(words[i] != 0) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of set cells.
+	 */
+	public int cardinality() {
+		int count = 0;
+		for(int i = 0; i < words.length; i++) {
+			count += Long.bitCount(words[i]);
+		}
+		return count;
+	}
+
+	/**
+	 * Gets the first set cell index starting from the given one.
+	 * @param from the index to start searching from, inclusive.
+	 * @return the index of the next set cell, or -1 if there is none.
+	 */
+	public int nextSetBit(int from) {
+		int w = from >>> 6;
+		if(w >= words.length) return -1;
+		long word = words[w] & (-1L << from);
+		while(true) {
+			if(word != 0) return (w << 6) + Long.numberOfTrailingZeros(word);
+			if(++w == words.length) return -1;
+			word = words[w];
+		}
+	}
+
+	/**
+	 * Replaces this BitBoard by the cells being next to one of the given BitBoard cells,
+	 * the given cells themselves excluded. Only the four orthogonal directions are used.
+	 * @param source a BitBoard of the same size, may not be this.
+	 */
+	public void neighbors(BitBoard source) {
+		long previous = 0;
+		for(int i = 0; i < words.length; i++) {
+			long w = source.words[i];
+			long next = i + 1 < words.length ? source.words[i+1] : 0;
+			words[i] = spread(w, previous, next) & ~w;
+			previous = w;
+		}
+	}
+
+	/**
+	 * Grows this BitBoard by one cell in the four orthogonal directions, staying inside the given area.
+	 * @param area a BitBoard of the same size.
+	 * @return true if at least one cell was added.
+	 */
+	public boolean grow(BitBoard area) {
+		boolean changed = false;
+		long previous = 0;
+		for(int i = 0; i < words.length; i++) {
+			long w = words[i];
+			long next = i + 1 < words.length ? words[i+1] : 0;
+			long grown = (spread(w, previous, next) | w) & area.words[i];
+			if(grown != w) {
+				words[i] = grown;
+				changed = true;
+			}
+			previous = w;
+		}
+		return changed;
+	}
+
+	/**
+	 * Flood-fills this BitBoard inside the given area, i.e. keeps growing it until
+	 * it holds every area cell connected to its starting cells.
+	 * @param area a BitBoard of the same size, which should contain this BitBoard.
+	 */
+	public void fill(BitBoard area) {
+		while(grow(area));
+	}
+
+	/**
+	 * Moves every cell by the given amount of cells. Cells going outside the board are lost.
+	 * @param dx the amount of cells to move on the x-axis.
+	 * @param dy the amount of cells to move on the y-axis.
+	 */
+	public void translate(int dx, int dy) {
+		for(; dx > 0; dx--) {
+			for(int i = 0; i < words.length; i++) words[i] = (words[i] << 1) & ~firstColumn;
+		}
+		for(; dx < 0; dx++) {
+			for(int i = 0; i < words.length; i++) words[i] = (words[i] >>> 1) & ~lastColumn;
+		}
+		for(; dy > 0; dy--) {
+			for(int i = words.length - 1; i >= 0; i--) {
+				long previous = i > 0 ? words[i-1] : 0;
+				words[i] = (size == 64 ? 0 : words[i] << size) | (previous >>> (64 - size));
+			}
+		}
+		for(; dy < 0; dy++) {
+			for(int i = 0; i < words.length; i++) {
+				long next = i + 1 < words.length ? words[i+1] : 0;
+				words[i] = (size == 64 ? 0 : words[i] >>> size) | (next << (64 - size));
+			}
+		}
+	}
+
+	/**
+	 * Gets the most upper-left cell coords (for the min)
+	 * and the most lower-right cell coords (for the max).
+	 * @param edges an array of at least 4 ints to fill with {minX, minY, maxX, maxY}, all -1 if empty.
+	 * @return the given array.
+	 */
+	public int[] boundingBox(int[] edges) {
+		long columns = 0;
+		int first = -1, last = -1;
+		for(int i = 0; i < words.length; i++) {
+			if(words[i] != 0) {
+				if(first == -1) first = i;
+				last = i;
+				columns |= words[i];
+			}
+		}
+		if(first == -1) {
+			edges[0] = edges[1] = edges[2] = edges[3] = -1;
+			return edges;
+		}
+		for(int s = 32; s >= size; s >>= 1) {
+			columns |= columns >>> s;
+		}
+		columns &= rowMask;
+
+		edges[0] = Long.numberOfTrailingZeros(columns);
+		edges[1] = ((first << 6) + Long.numberOfTrailingZeros(words[first])) >>> shift;
+		edges[2] = 63 - Long.numberOfLeadingZeros(columns);
+		edges[3] = ((last << 6) + 63 - Long.numberOfLeadingZeros(words[last])) >>> shift;
+		return edges;
+	}
+
+	/**
+	 * Spreads the bits of a word by one cell in the four orthogonal directions.
+	 * @param w the word to spread.
+	 * @param previous the word holding the rows above w.
+	 * @param next the word holding the rows under w.
+	 * @return the cells next to w cells, possibly including w cells.
+	 */
+	private long spread(long w, long previous, long next) {
+		long spread = ((w << 1) & ~firstColumn) | ((w >>> 1) & ~lastColumn)
+				| (previous >>> (64 - size)) | (next << (64 - size));
+		if(size < 64) {
+			spread |= (w << size) | (w >>> size);
+		}
+		return spread;
+	}
+
+}
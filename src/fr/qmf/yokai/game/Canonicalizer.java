@@ -0,0 +1,177 @@
+package fr.qmf.yokai.game;
+
+import java.util.List;
+
+/**
+ * Reduces games to a canonical key, the same for every game alike but for where the deck lies on the board,
+ * one of the 8 rotations and reflections of the deck, or the names of the families:
+ * searches and caches may then handle such games once.
+ * As with {@link GameStorage#getHash()}, the key covers the cards with their families and hints, the pile of hints,
+ * the discovered hints, the cards shown, the stage and the player to play.
+ * <br>
+ * Each symmetry of the deck is moved to the upper-left corner and its cards are read row by row,
+ * the families being renamed in the order they first appear, hints included,
+ * then come the hints of the pile and the discovered ones renamed alike, and the cells of the cards shown.
+ * Renaming families this way gives the same reading for every naming of the families,
+ * so only the 8 symmetries are tried and the least reading is kept.
+ * Its arrays are only allocated when the game outgrows them, so canonicalizing makes no garbage.
+ * @author LeFlo
+ *
+ */
+public class Canonicalizer {
+
+	// Each symmetry maps (x, y) to (X_BY_X*x + X_BY_Y*y, Y_BY_X*x + Y_BY_Y*y).
+	private static final int[] X_BY_X = {1, -1, 1, -1, 0, 0, 0, 0};
+	private static final int[] X_BY_Y = {0, 0, 0, 0, 1, -1, 1, -1};
+	private static final int[] Y_BY_X = {0, 0, 0, 0, 1, 1, -1, -1};
+	private static final int[] Y_BY_Y = {1, 1, -1, -1, 0, 0, 0, 0};
+
+	private long[] order = new long[0]; // Cell then index of each card, sorted.
+	private int[] names = new int[0]; // New name of each family, -1 until it appears.
+	// Readings of the game, two longs per card: its cell and family, then its hint. Then the hints and the cards shown.
+	private long[] reading = new long[0], best = new long[0];
+	private int symmetry;
+
+	/**
+	 * @param storage
+	 * @return the canonical key of the game, 64 bits hashed from its least reading.
+	 */
+	public long canonicalize(GameStorage storage) {
+		int cardCount = storage.getCardCount();
+		int familyCount = storage.getVariant().getFamilyCount();
+		int length = readingLength(storage);
+		if(order.length < cardCount) {
+			order = new long[cardCount];
+		}
+		if(reading.length < length) {
+			reading = new long[length];
+			best = new long[length];
+		}
+		if(names.length < familyCount) {
+			names = new int[familyCount];
+		}
+
+		symmetry = -1;
+		for(int s = 0; s < 8; s++) {
+			read(storage, s);
+			if(symmetry == -1 || compare(reading, best, length) < 0) {
+				long[] swap = best;
+				best = reading;
+				reading = swap;
+				symmetry = s;
+			}
+		}
+
+		long key = Zobrist.stage(storage.getCurrentStage()) ^ Zobrist.player(storage.getCurrentPlayer().getId());
+		for(int i = 0; i < length; i++) {
+			key = Zobrist.mix(key ^ best[i]);
+		}
+		return key;
+	}
+
+	/**
+	 * @return the symmetry giving the least reading in the last call to {@link #canonicalize(GameStorage)},
+	 * 0 to 3 for the reflections along the axes, 4 to 7 for the same after swapping x and y.
+	 */
+	public int getSymmetry() {
+		return symmetry;
+	}
+
+	/**
+	 * @return the number of longs of a reading: two per card, the numbers of discovered hints and cards shown,
+	 * the hints of the pile, the discovered hints and the cards shown.
+	 */
+	private static int readingLength(GameStorage storage) {
+		return 2*storage.getCardCount() + 1 + storage.getHints().length + storage.getDiscoveredHints().size() + storage.getCardsShown();
+	}
+
+	/**
+	 * Reads the game in a symmetry into {@link #reading}.
+	 */
+	private void read(GameStorage storage, int s) {
+		int cardCount = storage.getCardCount();
+		int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+		for(int i = 0; i < cardCount; i++) {
+			int x = storage.getCardX(i), y = storage.getCardY(i);
+			minX = Math.min(minX, X_BY_X[s]*x + X_BY_Y[s]*y);
+			minY = Math.min(minY, Y_BY_X[s]*x + Y_BY_Y[s]*y);
+		}
+
+		// Sorts the cards row by row, the cells being relative to the upper-left corner.
+		for(int i = 0; i < cardCount; i++) {
+			long entry = cell(s, storage.getCardX(i), storage.getCardY(i), minX, minY) << 32 | i;
+			int j = i;
+			while(j > 0 && order[j - 1] > entry) {
+				order[j] = order[j - 1];
+				j--;
+			}
+			order[j] = entry;
+		}
+
+		// Names the families in the order they first appear, so that hints may be renamed.
+		int familyCount = storage.getVariant().getFamilyCount();
+		for(int f = 0; f < familyCount; f++) {
+			names[f] = -1;
+		}
+		int nameCount = 0;
+		for(int i = 0; i < cardCount; i++) {
+			int family = storage.getCard((int) order[i]).getFamily();
+			if(names[family] == -1) {
+				names[family] = nameCount++;
+			}
+		}
+		// Families without cards are only named by hints, they keep their order.
+		for(int f = 0; f < familyCount; f++) {
+			if(names[f] == -1) {
+				names[f] = nameCount++;
+			}
+		}
+
+		for(int i = 0; i < cardCount; i++) {
+			int index = (int) order[i];
+			Card card = storage.getCard(index);
+			reading[2*i] = (order[i] >>> 32) << 8 | names[card.getFamily()];
+			reading[2*i + 1] = rename(card.getHint());
+		}
+
+		List<Long> discoveredHints = storage.getDiscoveredHints();
+		int[] shown = storage.getCardsShownCoords();
+		int r = 2*cardCount;
+		reading[r++] = (long) discoveredHints.size() << 8 | storage.getCardsShown();
+		for(long hint : storage.getHints()) {
+			reading[r++] = rename(hint);
+		}
+		for(int i = 0; i < discoveredHints.size(); i++) {
+			reading[r++] = rename(discoveredHints.get(i));
+		}
+		for(int i = 0; i < storage.getCardsShown(); i++) {
+			reading[r++] = cell(s, shown[2*i], shown[2*i + 1], minX, minY);
+		}
+	}
+
+	/**
+	 * @return the cell of (x, y) in a symmetry, relative to the upper-left corner of the deck: its row then its column.
+	 */
+	private static long cell(int s, int x, int y, int minX, int minY) {
+		return (long) (Y_BY_X[s]*x + Y_BY_Y[s]*y - minY) << 16 | (X_BY_X[s]*x + X_BY_Y[s]*y - minX);
+	}
+
+	/**
+	 * @return the hint with its families renamed as in the current reading.
+	 */
+	private long rename(long hint) {
+		long renamed = 0;
+		for(long rest = hint; rest != 0; rest &= rest - 1) {
+			renamed |= 1L << names[Long.numberOfTrailingZeros(rest)];
+		}
+		return renamed;
+	}
+
+	private static int compare(long[] a, long[] b, int length) {
+		for(int i = 0; i < length; i++) {
+			if(a[i] != b[i]) return Long.compare(a[i], b[i]);
+		}
+		return 0;
+	}
+
+}
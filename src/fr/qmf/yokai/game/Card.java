@@ -1,87 +1,138 @@
 package fr.qmf.yokai.game;
 
-import java.io.Serializable;
-
 /**
  * Represents a Card in the game.
+ * The data of a card lives in a {@link CardMap}, packed in primitive arrays: a Card is only a view over an index of it.
+ * A card made with a constructor lives in a map of its own, and putting it on a board copies it.
+ * A view follows its index, not its card: once a card is removed from the board the last card takes its index,
+ * so views over either of them must not be kept across a removal.
+ * Hints and dragging take part in the rules, so they are only changed through {@link GameStorage}.
  * @author LeFlo
  *
  */
-public class Card implements Serializable {
-	
-	private static final long serialVersionUID = 1L;
+public class Card {
+
 	public static final double ANIMATION_DURATION = 0.7;
-	
-	private YokaiType type;
-	private byte hint;
-	
-	private boolean shown;
-	private boolean animated;
-	private double animationTime;
-	
-	private boolean moving;
-	
+
+	// Packed state of a card: its family in the low bits, then its flags.
+	public static final int FAMILY_MASK = 0xFF;
+	public static final int SHOWN = 1 << 8;
+	public static final int ANIMATED = 1 << 9;
+	public static final int MOVING = 1 << 10;
+
+	private final CardMap cards;
+	private final int index;
 
 	public Card(YokaiType type) {
-		this.type = type;
+		this(type.ordinal());
 	}
-	
+
+	/**
+	 * @param family the family of the card in its {@link Variant}.
+	 */
+	public Card(int family) {
+		this.cards = new CardMap(1);
+		this.index = cards.put(0, family);
+	}
+
+	/**
+	 * Makes a view over a card of a map.
+	 * @param cards
+	 * @param index
+	 */
+	Card(CardMap cards, int index) {
+		this.cards = cards;
+		this.index = index;
+	}
+
+	/**
+	 * @return a card living in a map of its own with the same data as this one.
+	 */
+	public Card copy() {
+		Card copy = new Card(getFamily());
+		copy.cards.put(0, this);
+		return copy;
+	}
+
 	/**
 	 * Starts an animation for the card to flip. Changing from showing back to showing the Yokai and vice-versa.
 	 */
 	public void flip() {
-		if(!animated) {
-			animated = true;
-			animationTime = 0;
+		if(!isAnimated()) {
+			setAnimated(true);
+			setAnimationTime(0);
 		}
 	}
-	
+
+	/**
+	 * @return the family and the flags of the card packed in an int.
+	 */
+	public int getState() {
+		return cards.getState(index);
+	}
+
+    public int getFamily() {
+		return cards.getFamily(index);
+	}
+
+    /**
+     * @return the YokaiType drawn for the family of the card.
+     */
     public YokaiType getType() {
-		return type;
+		return YokaiType.of(getFamily());
 	}
-    
-    public byte getHint() {
-		return hint;
+
+    /**
+     * @return the bitmask of the families shown by the hint, 0 without hint.
+     */
+    public long getHint() {
+		return cards.getHint(index);
 	}
-    
+
     public boolean hasHint() {
-    	return hint != 0;
+    	return getHint() != 0;
     }
-    
-    public void setHint(byte hint) {
-		this.hint = hint;
+
+    /**
+     * Only for {@link GameStorage#setCardHint(int, int, long)}, which keeps the score and the hash up to date.
+     */
+    void setHint(long hint) {
+		cards.setHint(index, hint);
 	}
 
 	public boolean isShown() {
-		return shown;
+		return cards.hasFlag(index, SHOWN);
 	}
 
 	public void setShown(boolean shown) {
-		this.shown = shown;
+		cards.setFlag(index, SHOWN, shown);
 	}
-	
+
 	public double getAnimationTime() {
-		return animationTime;
+		return cards.getAnimationTime(index);
 	}
 
 	public void setAnimationTime(double animationTime) {
-		this.animationTime = animationTime;
+		cards.setAnimationTime(index, animationTime);
 	}
 
 	public boolean isAnimated() {
-		return animated;
+		return cards.hasFlag(index, ANIMATED);
 	}
 
 	public void setAnimated(boolean animated) {
-		this.animated = animated;
+		cards.setFlag(index, ANIMATED, animated);
 	}
-	
-	public void setMoving(boolean moving) {
-		this.moving = moving;
+
+	/**
+	 * Only for {@link GameStorage#setCardMoving(int, int, boolean)}, which keeps the connectivity up to date.
+	 */
+	void setMoving(boolean moving) {
+		cards.setFlag(index, MOVING, moving);
 	}
-	
+
 	public boolean isMoving() {
-		return moving;
+		return cards.isMoving(index);
 	}
-	
+
 }
@@ -0,0 +1,399 @@
+package fr.qmf.yokai.game;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * The cards of the board, keyed by their coords packed in a single int, see {@link #key(int, int)}.
+ * It is an open-addressing hash table with linear probing, so that no key is ever boxed.
+ * The entries themselves are packed in parallel primitive arrays and may be iterated with an index between 0 and {@link #size()}:
+ * going through the board costs time proportional to the number of cards, whatever the area they cover,
+ * and reads contiguous memory. Each card is a packed state, see {@link Card#FAMILY_MASK}, a hint and an animation time.
+ * {@link Card} objects are only views over an index, made once per index.
+ * Removing a card moves the last entry to its index, the other indexes never change.
+ * Coords are packed on 16 bits each, so the board is a torus of 65536 cells per side,
+ * which is as good as unbounded.
+ * @author LeFlo
+ *
+ */
+public class CardMap implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private transient int[] table; // Index + 1 of the entry stored in each slot, 0 for an empty slot.
+	private transient int[] keys;
+	private transient int[] states; // Family and flags of each card, see Card#FAMILY_MASK.
+	private transient long[] hints;
+	private transient double[] animationTimes; // Only meaningful for animated cards.
+	private transient Card[] views; // View over each index, made when first asked for.
+	private transient int size;
+
+	public CardMap() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity the number of cards the map holds before growing.
+	 */
+	public CardMap(int capacity) {
+		allocate(Math.max(capacity, 1));
+	}
+
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		states = new int[capacity];
+		hints = new long[capacity];
+		animationTimes = new double[capacity];
+		views = new Card[capacity];
+		table = new int[Integer.highestOneBit(capacity) * 4]; // Kept at most half full.
+		size = 0;
+	}
+
+	/**
+	 * Copies a map, which only copies a few arrays.
+	 * @param other
+	 */
+	public CardMap(CardMap other) {
+		table = other.table.clone();
+		keys = other.keys.clone();
+		states = other.states.clone();
+		hints = other.hints.clone();
+		animationTimes = other.animationTimes.clone();
+		views = new Card[keys.length];
+		size = other.size;
+	}
+
+	/**
+	 * Makes this map a copy of another one, reusing its arrays if they have the same capacity,
+	 * so that a map restored again and again makes no garbage.
+	 * The views over the indexes of this map stay valid and follow the copied cards.
+	 * @param other
+	 */
+	public void copyFrom(CardMap other) {
+		if(keys.length != other.keys.length) {
+			keys = new int[other.keys.length];
+			states = new int[other.keys.length];
+			hints = new long[other.keys.length];
+			animationTimes = new double[other.keys.length];
+			views = Arrays.copyOf(views, other.keys.length);
+			table = new int[other.table.length];
+		}
+		System.arraycopy(other.table, 0, table, 0, table.length);
+		System.arraycopy(other.keys, 0, keys, 0, other.size);
+		System.arraycopy(other.states, 0, states, 0, other.size);
+		System.arraycopy(other.hints, 0, hints, 0, other.size);
+		System.arraycopy(other.animationTimes, 0, animationTimes, 0, other.size);
+		size = other.size;
+	}
+
+	/**
+	 * Packs coords in a key.
+	 * @param x any x coordinate, wrapped on 16 bits.
+	 * @param y any y coordinate, wrapped on 16 bits.
+	 * @return the key of the cell.
+	 */
+	public static int key(int x, int y) {
+		return (y << 16) | (x & 0xFFFF);
+	}
+
+	public static int getX(int key) {
+		return (short) key;
+	}
+
+	public static int getY(int key) {
+		return key >> 16;
+	}
+
+	/**
+	 * @param key
+	 * @param direction 0 to 3 for right, left, down and up.
+	 * @return the key of the cell next to the given one in this direction.
+	 */
+	public static int neighbor(int key, int direction) {
+		switch(direction) {
+		case 0: return (key & 0xFFFF0000) | ((key + 1) & 0xFFFF);
+		case 1: return (key & 0xFFFF0000) | ((key - 1) & 0xFFFF);
+		case 2: return key + 0x10000;
+		default: return key - 0x10000;
+		}
+	}
+
+	/**
+	 * @return the number of cards.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the number of cards the map holds before growing, every index is lower.
+	 */
+	public int capacity() {
+		return keys.length;
+	}
+
+	/**
+	 * @param index between 0 and {@link #size()} excluded.
+	 * @return the key of the card at this index.
+	 */
+	public int getKey(int index) {
+		return keys[index];
+	}
+
+	/**
+	 * @param index between 0 and {@link #size()} excluded.
+	 * @return a view over the card at this index, which follows whatever card has this index:
+	 * after {@link #remove(int)} it may be over another card.
+	 */
+	public Card getCard(int index) {
+		Card view = views[index];
+		if(view == null) {
+			view = views[index] = new Card(this, index);
+		}
+		return view;
+	}
+
+	/**
+	 * @param index between 0 and {@link #size()} excluded.
+	 * @return the packed state of the card at this index, see {@link Card#FAMILY_MASK}.
+	 */
+	public int getState(int index) {
+		return states[index];
+	}
+
+	public void setState(int index, int state) {
+		states[index] = state;
+	}
+
+	/**
+	 * @param index between 0 and {@link #size()} excluded.
+	 * @return the family of the card at this index.
+	 */
+	public int getFamily(int index) {
+		return states[index] & Card.FAMILY_MASK;
+	}
+
+	/**
+	 * @param index between 0 and {@link #size()} excluded.
+	 * @param flag one of {@link Card#SHOWN}, {@link Card#ANIMATED} and {@link Card#MOVING}.
+	 * @return true if the card at this index has the flag.
+	 */
+	public boolean hasFlag(int index, int flag) {
+		return (states[index] & flag) != 0;
+	}
+
+	public void setFlag(int index, int flag, boolean value) {
+		if(value) {
+			states[index] |= flag;
+		} else {
+			states[index] &= ~flag;
+		}
+	}
+
+	/**
+	 * @param index between 0 and {@link #size()} excluded.
+	 * @return true if the card at this index is being dragged.
+	 */
+	public boolean isMoving(int index) {
+		return (states[index] & Card.MOVING) != 0;
+	}
+
+	/**
+	 * @param index between 0 and {@link #size()} excluded.
+	 * @return the hint on the card at this index, 0 without hint.
+	 */
+	public long getHint(int index) {
+		return hints[index];
+	}
+
+	public void setHint(int index, long hint) {
+		hints[index] = hint;
+	}
+
+	public double getAnimationTime(int index) {
+		return animationTimes[index];
+	}
+
+	public void setAnimationTime(int index, double animationTime) {
+		animationTimes[index] = animationTime;
+	}
+
+	/**
+	 * @param key
+	 * @return the index of the card on this cell, or -1 if there is none.
+	 */
+	public int indexOf(int key) {
+		int entry = table[slot(key)];
+		return entry - 1;
+	}
+
+	/**
+	 * @param key
+	 * @return the card on this cell, or null if there is none.
+	 */
+	public Card get(int key) {
+		int entry = table[slot(key)];
+		return entry == 0 ? null : getCard(entry - 1);
+	}
+
+	/**
+	 * Puts a copy of a card on a cell, replacing the card that was there if any.
+	 * @param key
+	 * @param card
+	 * @return the index of the card.
+	 */
+	public int put(int key, Card card) {
+		return put(key, card.getState(), card.getHint(), card.getAnimationTime());
+	}
+
+	/**
+	 * Puts a new card on a cell, replacing the card that was there if any.
+	 * @param key
+	 * @param family
+	 * @return the index of the card.
+	 */
+	public int put(int key, int family) {
+		return put(key, family & Card.FAMILY_MASK, 0, 0);
+	}
+
+	private int put(int key, int state, long hint, double animationTime) {
+		int slot = slot(key);
+		int index;
+		if(table[slot] != 0) {
+			index = table[slot] - 1;
+		} else {
+			if(size == keys.length) {
+				grow();
+				slot = slot(key);
+			}
+			index = size;
+			keys[index] = key;
+			table[slot] = ++size;
+		}
+		states[index] = state;
+		hints[index] = hint;
+		animationTimes[index] = animationTime;
+		return index;
+	}
+
+	/**
+	 * Takes the card off a cell. The last card takes the index of the removed one,
+	 * so the views over both indexes now show that card, see {@link #getCard(int)}.
+	 * @param key
+	 * @return true if there was a card to remove.
+	 */
+	public boolean remove(int key) {
+		int slot = slot(key);
+		if(table[slot] == 0) return false;
+
+		int index = table[slot] - 1;
+		delete(slot);
+
+		int last = --size;
+		if(index != last) {
+			keys[index] = keys[last];
+			states[index] = states[last];
+			hints[index] = hints[last];
+			animationTimes[index] = animationTimes[last];
+			table[slot(keys[index])] = index + 1;
+		}
+		return true;
+	}
+
+	/**
+	 * Moves a card to an empty cell, keeping its index.
+	 * @param from the key of the card.
+	 * @param to the key of an empty cell.
+	 * @return the index of the card, or -1 if there was no card to move.
+	 */
+	public int move(int from, int to) {
+		int slot = slot(from);
+		if(table[slot] == 0) return -1;
+
+		int index = table[slot] - 1;
+		delete(slot);
+		keys[index] = to;
+		table[slot(to)] = index + 1;
+		return index;
+	}
+
+	/**
+	 * Takes every card off.
+	 */
+	public void clear() {
+		Arrays.fill(table, 0);
+		size = 0;
+	}
+
+	/**
+	 * @return the slot holding the key, or the empty slot where it would go.
+	 */
+	private int slot(int key) {
+		int mask = table.length - 1;
+		int slot = hash(key) & mask;
+		while(table[slot] != 0 && keys[table[slot] - 1] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Empties a slot, moving back the following entries of the probe sequence so that none gets lost.
+	 */
+	private void delete(int slot) {
+		int mask = table.length - 1;
+		int hole = slot;
+		for(int next = (hole + 1) & mask; table[next] != 0; next = (next + 1) & mask) {
+			int home = hash(keys[table[next] - 1]) & mask;
+			if(((next - home) & mask) >= ((next - hole) & mask)) {
+				table[hole] = table[next];
+				hole = next;
+			}
+		}
+		table[hole] = 0;
+	}
+
+	private void grow() {
+		int capacity = keys.length * 2;
+		keys = Arrays.copyOf(keys, capacity);
+		states = Arrays.copyOf(states, capacity);
+		hints = Arrays.copyOf(hints, capacity);
+		animationTimes = Arrays.copyOf(animationTimes, capacity);
+		views = Arrays.copyOf(views, capacity);
+		table = new int[Integer.highestOneBit(capacity) * 4];
+		for(int index = 0; index < size; index++) {
+			table[slot(keys[index])] = index + 1;
+		}
+	}
+
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeInt(size);
+		for(int i = 0; i < size; i++) {
+			out.writeInt(keys[i]);
+			out.writeInt(states[i]);
+			out.writeLong(hints[i]);
+			out.writeDouble(animationTimes[i]);
+		}
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		int count = in.readInt();
+		allocate(Math.max(count, DEFAULT_CAPACITY));
+		for(int i = 0; i < count; i++) {
+			put(in.readInt(), in.readInt(), in.readLong(), in.readDouble());
+		}
+	}
+
+}
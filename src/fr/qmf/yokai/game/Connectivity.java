@@ -0,0 +1,204 @@
+package fr.qmf.yokai.game;
+
+import java.util.Arrays;
+
+/**
+ * Keeps track of the groups of cards on the board with two union-find structures over card indexes:
+ * one joining every pair of adjacent cards and one joining adjacent cards of the same family.
+ * Cards being dragged are left out of the index.
+ * Adding a card only merges groups, so it is cheap. Taking a card off may split a group,
+ * which union-find cannot undo, and moves the last card index: the owner then has to {@link #rebuild()} the index.
+ * @author LeFlo
+ *
+ */
+public class Connectivity {
+
+	private final CardMap cards;
+	private int[] deckParents = new int[0]; // Parent of each card joining every card, -1 for cards out of the index.
+	private int[] deckSizes = new int[0];
+	private int[] familyParents = new int[0]; // Parent of each card joining cards of the same family.
+	private int[] familySizes = new int[0];
+
+	private int cardCount;
+	private int deckGroups;
+	private final int[] familyGroups;
+	private int splitFamilies; // Number of families with more than one group.
+
+	/**
+	 * @param cards the cards of the board.
+	 * @param familyCount the number of families of cards.
+	 */
+	public Connectivity(CardMap cards, int familyCount) {
+		this.cards = cards;
+		familyGroups = new int[familyCount];
+		clear();
+	}
+
+	/**
+	 * Forgets every card.
+	 */
+	public void clear() {
+		Arrays.fill(deckParents, -1);
+		Arrays.fill(familyParents, -1);
+		Arrays.fill(familyGroups, 0);
+		cardCount = 0;
+		deckGroups = 0;
+		splitFamilies = 0;
+	}
+
+	/**
+	 * Rebuilds the index from scratch with every card not being dragged.
+	 */
+	public void rebuild() {
+		clear();
+		for(int index = 0; index < cards.size(); index++) {
+			if(!cards.isMoving(index)) {
+				add(index);
+			}
+		}
+	}
+
+	/**
+	 * Adds a card to the index, joining it to the indexed cards next to it.
+	 * @param index the index of the added card in the {@link CardMap}.
+	 */
+	public void add(int index) {
+		if(index >= deckParents.length) {
+			grow();
+		}
+		int family = cards.getFamily(index);
+		deckParents[index] = index;
+		deckSizes[index] = 1;
+		deckGroups++;
+		familyParents[index] = index;
+		familySizes[index] = 1;
+		if(++familyGroups[family] == 2) {
+			splitFamilies++;
+		}
+		cardCount++;
+
+		int key = cards.getKey(index);
+		for(int direction = 0; direction < 4; direction++) {
+			join(index, family, cards.indexOf(CardMap.neighbor(key, direction)));
+		}
+	}
+
+	/**
+	 * @return the number of indexed cards.
+	 */
+	public int getCardCount() {
+		return cardCount;
+	}
+
+	/**
+	 * @param index
+	 * @return true if the card at this index is indexed.
+	 */
+	public boolean contains(int index) {
+		return index >= 0 && index < deckParents.length && deckParents[index] != -1;
+	}
+
+	/**
+	 * @return the number of groups of adjacent cards.
+	 */
+	public int getDeckGroups() {
+		return deckGroups;
+	}
+
+	/**
+	 * @param family
+	 * @return the number of groups of adjacent cards of this family.
+	 */
+	public int getFamilyGroups(int family) {
+		return familyGroups[family];
+	}
+
+	/**
+	 * @return true if the indexed cards of each family are all in one group.
+	 */
+	public boolean isEveryFamilyConnected() {
+		return splitFamilies == 0;
+	}
+
+	/**
+	 * Checks if a card placed on the given cell would touch every group of cards,
+	 * i.e. if every card would be connected once it is placed.
+	 * @param key the key of the cell, see {@link CardMap#key(int, int)}.
+	 * @return true if every group of cards is next to the cell.
+	 */
+	public boolean touchesEveryGroup(int key) {
+		int right = deckRoot(CardMap.neighbor(key, 0));
+		int left = deckRoot(CardMap.neighbor(key, 1));
+		int down = deckRoot(CardMap.neighbor(key, 2));
+		int up = deckRoot(CardMap.neighbor(key, 3));
+
+		int touched = 0;
+		if(right != -1) touched++;
+		if(left != -1 && left != right) touched++;
+		if(down != -1 && down != right && down != left) touched++;
+		if(up != -1 && up != right && up != left && up != down) touched++;
+		return touched == deckGroups;
+	}
+
+	private int deckRoot(int key) {
+		int index = cards.indexOf(key);
+		return contains(index) ? find(deckParents, index) : -1;
+	}
+
+	private void join(int index, int family, int other) {
+		if(!contains(other)) return;
+
+		if(union(deckParents, deckSizes, index, other)) {
+			deckGroups--;
+		}
+		if(cards.getFamily(other) == family && union(familyParents, familySizes, index, other)) {
+			if(--familyGroups[family] == 1) {
+				splitFamilies--;
+			}
+		}
+	}
+
+	/**
+	 * Makes room for every index of the cards.
+	 */
+	private void grow() {
+		int length = deckParents.length;
+		int capacity = Math.max(cards.capacity(), length * 2);
+		deckParents = Arrays.copyOf(deckParents, capacity);
+		deckSizes = Arrays.copyOf(deckSizes, capacity);
+		familyParents = Arrays.copyOf(familyParents, capacity);
+		familySizes = Arrays.copyOf(familySizes, capacity);
+		Arrays.fill(deckParents, length, capacity, -1);
+		Arrays.fill(familyParents, length, capacity, -1);
+	}
+
+	/**
+	 * Finds the root of a card, halving the path on the way.
+	 */
+	private static int find(int[] parents, int index) {
+		while(parents[index] != index) {
+			parents[index] = parents[parents[index]];
+			index = parents[index];
+		}
+		return index;
+	}
+
+	/**
+	 * Joins the sets of both cards, the smallest one going under the largest.
+	 * @return true if they were in different sets.
+	 */
+	private static boolean union(int[] parents, int[] sizes, int a, int b) {
+		a = find(parents, a);
+		b = find(parents, b);
+		if(a == b) return false;
+		if(sizes[a] < sizes[b]) {
+			int t = a;
+			a = b;
+			b = t;
+		}
+		parents[b] = a;
+		sizes[a] += sizes[b];
+		return true;
+	}
+
+}
@@ -0,0 +1,42 @@
+package fr.qmf.yokai.game;
+
+/**
+ * Represents how a game ended, from its score.
+ * @author LeFlo
+ *
+ */
+public enum Ending {
+	
+	DEFEAT("Défaite"),
+	HONORABLE_VICTORY("Victoire Honorable"),
+	GLORIOUS_VICTORY("Victoire Glorieuse"),
+	TOTAL_VICTORY("Victoire Totale"),
+	;
+	
+	private String description;
+	
+	private Ending(String description) {
+		this.description = description;
+	}
+	
+	/**
+	 * Gets the description associated with this Ending.
+	 * @return the description associated with this Ending.
+	 */
+	public String getDescription() {
+		return description;
+	}
+	
+	/**
+	 * Gets the ending of a game from its score.
+	 * @param score the score of the game, -1 if the Yokai were not pleased.
+	 * @return the ending.
+	 */
+	public static Ending of(int score) {
+		if(score < 0) return DEFEAT;
+		if(score <= 7) return HONORABLE_VICTORY;
+		if(score <= 11) return GLORIOUS_VICTORY;
+		return TOTAL_VICTORY;
+	}
+
+}
@@ -0,0 +1,95 @@
+package fr.qmf.yokai.game;
+
+import java.util.Arrays;
+
+/**
+ * A Breadth-First-Search over the cards of a {@link CardMap}, working on card indexes.
+ * Cards being dragged are never discovered.
+ * The queue and the discovery marks are only allocated when the cards outgrow them,
+ * so that no garbage is made however often it runs, and a search only costs
+ * the number of cards it discovers.
+ * The discovered cards stay available until the next search.
+ * @author LeFlo
+ *
+ */
+public class FloodFill {
+
+	private final CardMap cards;
+	private int[] queue = new int[0]; // Discovered cards, in discovery order.
+	private int[] marks = new int[0]; // Search during which each card was discovered.
+	private int search;
+	private int discovered;
+
+	/**
+	 * @param cards the cards to search.
+	 */
+	public FloodFill(CardMap cards) {
+		this.cards = cards;
+	}
+
+	/**
+	 * Discovers each card connected to the given one.
+	 * @param start the index of the starting card.
+	 * @param family the only family of cards to follow, or -1 to follow every card.
+	 * @return the number of discovered cards, 0 if the starting card may not be discovered.
+	 */
+	public int fill(int start, int family) {
+		if(queue.length < cards.capacity()) {
+			queue = new int[cards.capacity()];
+			marks = new int[cards.capacity()];
+			search = 0;
+		}
+		if(++search == 0) {
+			Arrays.fill(marks, 0);
+			search = 1;
+		}
+		discovered = 0;
+		if(!isFollowed(start, family)) return 0;
+
+		visit(start);
+		int head = 0;
+		while(head < discovered) {
+			int key = cards.getKey(queue[head++]);
+			for(int direction = 0; direction < 4; direction++) {
+				int neighbor = cards.indexOf(CardMap.neighbor(key, direction));
+				if(neighbor != -1 && marks[neighbor] != search && isFollowed(neighbor, family)) {
+					visit(neighbor);
+				}
+			}
+		}
+		return discovered;
+	}
+
+	/**
+	 * @return the number of cards discovered by the last search.
+	 */
+	public int getDiscovered() {
+		return discovered;
+	}
+
+	/**
+	 * @param i between 0 and {@link #getDiscovered()} excluded.
+	 * @return the index of the i-th card discovered by the last search.
+	 */
+	public int getIndex(int i) {
+		return queue[i];
+	}
+
+	/**
+	 * @param index a card index.
+	 * @return true if the last search discovered this card.
+	 */
+	public boolean isDiscovered(int index) {
+		return index < marks.length && marks[index] == search;
+	}
+
+	private boolean isFollowed(int index, int family) {
+		return !cards.isMoving(index) && (family == -1 || cards.getFamily(index) == family);
+	}
+
+	private void visit(int index) {
+		marks[index] = search;
+		queue[discovered++] = index;
+	}
+
+}
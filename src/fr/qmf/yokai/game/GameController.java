@@ -1,6 +1,11 @@
 package fr.qmf.yokai.game;
 
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
 import fr.qmf.yokai.YokaiGame;
+import fr.qmf.yokai.game.bot.IsmctsBot;
 import fr.qmf.yokai.game.gui.layers.CardsLayer;
 import fr.qmf.yokai.game.gui.layers.GameLayer;
 import fr.qmf.yokai.game.gui.layers.HintsLayer;
@@ -9,14 +14,18 @@ import fr.qmf.yokai.io.audio.Sounds;
 /**
  * Represents the Controller in the MVC architecture.
  * Holds every constants needed to draw the things properly.
- * Holds also some of the game logic for the Cards and hint dragging and placing and so on.
+ * Turns the mouse into actions of the {@link GameEngine}, which holds the rules,
+ * and listens to it to play the sounds and animations.
+ * The mouse is heard on the window thread, but the game is only played on the game loop:
+ * what the mouse asks for is queued and played at the next tick, see {@link #playMouse()}.
  * @author LeFlo
  *
  */
-public class GameController {
+public class GameController implements GameListener {
 	
 	private YokaiGame game;
 	private GameStorage storage;
+	private GameEngine engine;
 	
 	private double zoom = 1; // Current zoom used in GameLayer to draw the scene.
 
@@ -32,7 +41,12 @@ public class GameController {
 	private int hoverCardX, hoverCardY; // Card being hovered while dragging.
 	
 	private boolean draggingHint; // Is a hint being dragged.
-	private byte hintDragged; // Hint being dragged.
+	private long hintDragged; // Hint being dragged.
+	
+	private Queue<Runnable> mouseActions = new ConcurrentLinkedQueue<>(); // Asked for by the mouse, played at the next tick.
+	
+	private IsmctsBot bot; // Plays one of the players in solo games, null otherwise.
+	private CompletableFuture<Long> botAction; // Action the bot is searching.
 	
 	private float hintFlippingAdvance; // Value for animating hint flipping.
 	private int oldHintsDiscoveredSize; // The number of hints before a hint is discovered or placed.
@@ -40,6 +54,10 @@ public class GameController {
 	public GameController(YokaiGame game) {
 		this.game = game;
 		this.storage = game.getGameStorage();
+		this.engine = new GameEngine(storage);
+		engine.addListener(this);
+		engine.addListener(game.getJournal());
+		game.getJournal().start(storage);
 		
 		detectGameDeckEdges();
 	}
@@ -52,26 +70,24 @@ public class GameController {
 	 * @return true if no further actions should be taken.
 	 */
 	public boolean cardDrag(double xCardDisplayed, double yCardDisplayed) {
-		Card[][] board = storage.getBoard();
-		
 		int xCard = Math.floorDiv((int) xCardDisplayed, CardsLayer.DEFAULT_CARD_SIZE + CardsLayer.CARD_MARGIN);
 		int yCard = Math.floorDiv((int) yCardDisplayed, CardsLayer.DEFAULT_CARD_SIZE + CardsLayer.CARD_MARGIN);
+		if(isBotTurn()) return false;
 		
 		if(!draggingCard) {
-			if(storage.isInsideBoard(xCard, yCard)) {
-				Card card = board[yCard][xCard];
-				if(card != null && !card.hasHint()) {
-					board[yCard][xCard].setMoving(true);
-					
+			Card card = storage.getCard(xCard, yCard);
+			if(card != null && !card.hasHint()) {
+				draggingCard = true;
+				xCardDrag = xCard;
+				yCardDrag = yCard;
+				xCardOffset = xCardDisplayed % (CardsLayer.DEFAULT_CARD_SIZE + CardsLayer.CARD_MARGIN);
+				yCardOffset = yCardDisplayed % (CardsLayer.DEFAULT_CARD_SIZE + CardsLayer.CARD_MARGIN);
+				// Lifting the card changes the rules engine, and the sounds draw from a random, both used by the game loop.
+				mouseActions.add(() -> {
+					storage.setCardMoving(xCard, yCard, true);
 					game.getSoundManager().playSound(Sounds.CARD_PICKING);
-					
-					draggingCard = true;
-					xCardDrag = xCard;
-					yCardDrag = yCard;
-					xCardOffset = xCardDisplayed % (CardsLayer.DEFAULT_CARD_SIZE + CardsLayer.CARD_MARGIN);
-					yCardOffset = yCardDisplayed % (CardsLayer.DEFAULT_CARD_SIZE + CardsLayer.CARD_MARGIN);
-					return true;
-				}
+				});
+				return true;
 			}
 		} else {
 			hoverCardX = xCard;
@@ -90,12 +106,13 @@ public class GameController {
 	public boolean hintDrag(double xCardDisplayed, double yCardDisplayed) {
 		int xCard = Math.floorDiv((int) xCardDisplayed, CardsLayer.DEFAULT_CARD_SIZE + CardsLayer.CARD_MARGIN);
 		int yCard = Math.floorDiv((int) yCardDisplayed, CardsLayer.DEFAULT_CARD_SIZE + CardsLayer.CARD_MARGIN);
+		if(isBotTurn()) return false;
 		
 		if(!draggingHint) {
 			int hintIndex = (xCard-(maxCardX+2))+2*(yCard-(minCardY+1));
 			if(hintIndex >= 0 && hintIndex < storage.getDiscoveredHints().size()) {
 				if(xCard >= maxCardX+2 && xCard <= maxCardX+HintsLayer.HINT_DECK_X_OFFSET+HintsLayer.HINT_ROWS && yCard >= minCardY+1 && yCard <= minCardY+HintsLayer.HINT_DECK_Y_OFFSET+storage.getHints().length/HintsLayer.HINT_ROWS) {
-					game.getSoundManager().playSound(Sounds.CARD_PICKING);
+					mouseActions.add(() -> game.getSoundManager().playSound(Sounds.CARD_PICKING));
 					
 					draggingHint = true;
 					hintDragged = storage.getDiscoveredHints().get(hintIndex);
@@ -121,46 +138,18 @@ public class GameController {
 	public void stoppedDraggingCardOrHint(double xCardDisplayed, double yCardDisplayed) {
 		int xCard = Math.floorDiv((int) xCardDisplayed, CardsLayer.DEFAULT_CARD_SIZE + CardsLayer.CARD_MARGIN);
 		int yCard = Math.floorDiv((int) yCardDisplayed, CardsLayer.DEFAULT_CARD_SIZE + CardsLayer.CARD_MARGIN);
-		
+		mouseActions.add(() -> stopDragging(xCard, yCard));
+	}
+	
+	private void stopDragging(int xCard, int yCard) {
 		if(storage.getCurrentStage().equals(GameStage.MOVING) && draggingCard) {
-			Card movingCard = storage.getBoard()[yCardDrag][xCardDrag];
-				
-			if(storage.isCorrectPlacement(xCard, yCard)) {
-				storage.getBoard()[yCardDrag][xCardDrag] = null;
-				
-				int[] centerOffset = storage.centerBoardBorder(xCard, yCard);
-				xCard += centerOffset[0];
-				yCard += centerOffset[1];
-				
-				
-				storage.getBoard()[yCard][xCard] = movingCard;
-				
-				storage.centerBoard();
-				
-				storage.setCurrentStage(storage.getCurrentStage().getNextStage());
-				
-				game.getSoundManager().playSound(Sounds.CARD_PLACING);
-				
-				detectGameDeckEdges();
+			if(!engine.move(xCardDrag, yCardDrag, xCard, yCard)) {
+				storage.setCardMoving(xCardDrag, yCardDrag, false);
 			}
-				
-			movingCard.setMoving(false);
+			
 			draggingCard = false;
 		} else if(storage.getCurrentStage().equals(GameStage.HINT) && draggingHint) {
-			if(storage.isInsideBoard(xCard, yCard) && storage.getBoard()[yCard][xCard] != null && !storage.getBoard()[yCard][xCard].hasHint()) {
-				storage.getBoard()[yCard][xCard].setHint(hintDragged);
-				
-				storage.getDiscoveredHints().remove((Object)hintDragged);
-				storage.getPlacedHints().add(hintDragged);
-				game.getSoundManager().playSound(Sounds.CARD_PLACING);
-				
-				storage.setCurrentStage(storage.getCurrentStage().getNextStage());
-				storage.switchPlayers();
-				
-				if(storage.getPlacedHints().size() == storage.getHints().length) {
-					endGame();
-				}
-			}
+			engine.placeHint(hintDragged, xCard, yCard);
 			
 			draggingHint = false;
 		}
@@ -171,92 +160,213 @@ public class GameController {
 	 * such as flipping the card or hint, playing a Sound, and so on.
 	 * @param xCardDisplayed the x coordinate on window from the top left edge of cards (the game deck) being drawn.
 	 * @param yCardDisplayed the y coordinate on window from the top left edge of cards (the game deck) being drawn.
-	 * @return true if no further actions should be takend.
 	 */
-	public boolean clickCardOrHint(double xCardDisplayed, double yCardDisplayed) {
+	public void clickCardOrHint(double xCardDisplayed, double yCardDisplayed) {
 		int xCard = Math.floorDiv((int) xCardDisplayed, CardsLayer.DEFAULT_CARD_SIZE + CardsLayer.CARD_MARGIN);
 		int yCard = Math.floorDiv((int) yCardDisplayed, CardsLayer.DEFAULT_CARD_SIZE + CardsLayer.CARD_MARGIN);
-		
-		Card[][] board = storage.getBoard();
+		mouseActions.add(() -> click(xCard, yCard));
+	}
+	
+	private void click(int xCard, int yCard) {
+		if(isBotTurn()) return;
 		
 		if(game.getGameStorage().getCurrentStage().equals(GameStage.PLAY_OR_GUESS) || game.getGameStorage().getCurrentStage().equals(GameStage.OBSERVING)) {
-			if(xCard < 0 || xCard >= board[0].length || yCard < 0 || yCard >= board.length) return false;
+			if(storage.getCardsShown() == 2) return;
+			if(storage.getCardsShownCoords()[0] == xCard && storage.getCardsShownCoords()[1] == yCard) return;
 			
-			if(storage.getCardsShown() == 2) return false;
-			if(storage.getCardsShownCoords()[0] == xCard && storage.getCardsShownCoords()[1] == yCard) return false;
-			
-			Card card = board[yCard][xCard];
+			Card card = storage.getCard(xCard, yCard);
 			if(card != null && !card.hasHint()) {
-				game.getSoundManager().playSound(Sounds.CARD_FLIP);
-				
-				game.getGameStorage().setCurrentStage(GameStage.OBSERVING);
-				card.flip();
-				storage.getCardsShownCoords()[storage.getCardsShown()*2] = xCard;
-				storage.getCardsShownCoords()[storage.getCardsShown()*2+1] = yCard;
-				storage.setCardsShown(storage.getCardsShown()+1);
-				
-				if(storage.getCardsShown() == 2) {
-					game.getScheduler().scheduleTask(new Runnable() {
-						@Override
-						public void run() {
-							Card c1 = board[storage.getCardsShownCoords()[1]][storage.getCardsShownCoords()[0]];
-							Card c2 = board[storage.getCardsShownCoords()[3]][storage.getCardsShownCoords()[2]];
-							storage.setCardsShown(0);
-							game.getSoundManager().playSound(Sounds.CARD_FLIP);
-							c1.flip();
-							c2.flip();
-							game.getGameStorage().setCurrentStage(game.getGameStorage().getCurrentStage().getNextStage());
-						}
-					}, GameLayer.TIME_SHOWING_CARDS*20);
-				}
+				showCard(xCard, yCard);
 			}
 		}
 		
 		if(storage.getCurrentStage().equals(GameStage.HINT)) {
-			if(xCard == maxCardX+2 && yCard == minCardY && storage.getHints()[storage.getHints().length-1] != 0) {
-				storage.getDiscoveredHints().add(storage.getHints()[storage.getDiscoveredHints().size()+storage.getPlacedHints().size()]);
-				storage.getHints()[storage.getDiscoveredHints().size()+storage.getPlacedHints().size()-1] = 0;
-				storage.setCurrentStage(storage.getCurrentStage().getNextStage());
-				
-				storage.switchPlayers();
-				
-				game.getSoundManager().playSound(Sounds.CARD_FLIP);
-				return true;
+			if(xCard == maxCardX+2 && yCard == minCardY) {
+				engine.drawHint();
 			}
 		}
-		
-		return false;
 	}
 	
 	/**
-	 * Stops the game flip all cards gradually with an animation and calculate the score.
+	 * Flips a card for the players to observe it. Once two cards are shown, they are flipped back
+	 * after a while and the observation is played.
+	 * The stage is left to the engine, so that the observation is recorded from the stage a replay goes through:
+	 * the cards shown are what tells the players are observing, see {@link #isObserving()}.
+	 * @param xCard
+	 * @param yCard
 	 */
-	public void endGame() {
-		storage.setCurrentStage(GameStage.END);
+	private void showCard(int xCard, int yCard) {
+		game.getSoundManager().playSound(Sounds.CARD_FLIP);
 		
-		Card[][] board = storage.getBoard();
-		for(int j = 0; j < board.length; j++) {
-			for(int i = 0; i < board[0].length; i++) {
-				Card card = board[j][i];
-				if(card != null) {
-					card.flip();
-					card.setAnimationTime(-1d/game.getTargetFPS()*i*j*2);
+		storage.getCard(xCard, yCard).flip();
+		storage.getCardsShownCoords()[storage.getCardsShown()*2] = xCard;
+		storage.getCardsShownCoords()[storage.getCardsShown()*2+1] = yCard;
+		storage.setCardsShown(storage.getCardsShown()+1);
+		
+		if(storage.getCardsShown() == 2) {
+			game.getScheduler().scheduleTask(new Runnable() {
+				@Override
+				public void run() {
+					int[] coords = storage.getCardsShownCoords();
+					storage.setCardsShown(0);
+					game.getSoundManager().playSound(Sounds.CARD_FLIP);
+					storage.getCard(coords[0], coords[1]).flip();
+					storage.getCard(coords[2], coords[3]).flip();
+					engine.observe(coords[0], coords[1], coords[2], coords[3]);
 				}
+			}, GameLayer.TIME_SHOWING_CARDS*20);
+		}
+	}
+	
+	/**
+	 * Plays what the mouse asked for since the last tick, to be called every tick.
+	 */
+	public void playMouse() {
+		for(Runnable action = mouseActions.poll(); action != null; action = mouseActions.poll()) {
+			action.run();
+		}
+	}
+	
+	/**
+	 * Lets the bot play when it is its turn, to be called every tick.
+	 * The bot searches on threads of its own, then its action is played through the same path as the mouse.
+	 */
+	public void playBot() {
+		if(bot == null || game.isPaused()) return;
+		
+		if(botAction == null) {
+			// Waits for the cards being shown to be flipped back.
+			if(isBotTurn() && storage.getCurrentStage() != GameStage.END && storage.getCardsShown() == 0) {
+				botAction = bot.search();
+			}
+		} else if(botAction.isDone()) {
+			long action = botAction.join();
+			botAction = null;
+			
+			if(Action.getType(action) == Action.OBSERVE) {
+				showCard(Action.getArgument(action, 0), Action.getArgument(action, 1));
+				showCard(Action.getArgument(action, 2), Action.getArgument(action, 3));
+			} else {
+				engine.apply(action);
+			}
+		}
+	}
+	
+	/**
+	 * Takes back the last action. In solo games, the actions of the bot are taken back too,
+	 * back to the last action of the player.
+	 * Nothing is taken back while something is dragged or cards are shown.
+	 */
+	public void undo() {
+		if(draggingCard || draggingHint || storage.getCardsShown() != 0) return;
+		// The action the bot is searching would be played on another game.
+		cancelBotAction();
+		
+		boolean ended = storage.getCurrentStage() == GameStage.END;
+		boolean undone = engine.undo();
+		while(undone && isBotTurn()) {
+			undone = engine.undo();
+		}
+		if(ended && storage.getCurrentStage() != GameStage.END) {
+			// Flips back the cards shown when the game ended.
+			for(int i = 0; i < storage.getCardCount(); i++) {
+				storage.getCard(i).flip();
 			}
 		}
+		detectGameDeckEdges();
+	}
+	
+	/**
+	 * Plays again the last action taken back, with the actions of the bot which followed in solo games.
+	 */
+	public void redo() {
+		if(draggingCard || draggingHint || storage.getCardsShown() != 0) return;
+		cancelBotAction();
 		
-		storage.calculateScore();
+		boolean redone = engine.redo();
+		while(redone && isBotTurn() && storage.getCurrentStage() != GameStage.END) {
+			redone = engine.redo();
+		}
+		detectGameDeckEdges();
+	}
+	
+	/**
+	 * Stops the search of the bot, waiting for its threads so that the next search does not share them.
+	 */
+	private void cancelBotAction() {
+		if(botAction == null) return;
+		bot.cancel();
+		botAction = null;
 	}
 	
 	/**
-	 * Computes the edges of the game deck. Checking the card coordinates that is the upper left and the lower right.
+	 * @return true while cards are shown for an observation, peace may not be declared then.
+	 */
+	public boolean isObserving() {
+		return storage.getCardsShown() != 0;
+	}
+	
+	/**
+	 * @return true if the bot is the current player, the mouse then being ignored.
+	 */
+	public boolean isBotTurn() {
+		return bot != null && storage.getCurrentPlayer().getId() == bot.getSeat();
+	}
+	
+	/**
+	 * Stops the game at the next tick, the Yokai being declared pleased.
+	 */
+	public void endGame() {
+		mouseActions.add(() -> {
+			if(!isObserving()) engine.declarePeace();
+		});
+	}
+	
+	@Override
+	public void cardMoved(int fromX, int fromY, int toX, int toY) {
+		game.getSoundManager().playSound(Sounds.CARD_PLACING);
+		detectGameDeckEdges();
+	}
+	
+	@Override
+	public void boardCentered(int dx, int dy) {
+		// Pans the other way round so that the deck stays still on screen.
+		panX -= dx*(CardsLayer.DEFAULT_CARD_SIZE + CardsLayer.CARD_MARGIN)*zoom;
+		panY -= dy*(CardsLayer.DEFAULT_CARD_SIZE + CardsLayer.CARD_MARGIN)*zoom;
+		detectGameDeckEdges();
+	}
+	
+	@Override
+	public void hintDrawn(long hint) {
+		game.getSoundManager().playSound(Sounds.CARD_FLIP);
+	}
+	
+	@Override
+	public void hintPlaced(long hint, int x, int y) {
+		game.getSoundManager().playSound(Sounds.CARD_PLACING);
+	}
+	
+	/**
+	 * Flips all cards gradually with an animation.
+	 */
+	@Override
+	public void gameEnded(int score) {
+		for(int i = 0; i < storage.getCardCount(); i++) {
+			Card card = storage.getCard(i);
+			card.flip();
+			card.setAnimationTime(-1d/game.getTargetFPS()*storage.getCardX(i)*storage.getCardY(i)*2);
+		}
+	}
+	
+	/**
+	 * Reads the edges of the game deck, the card coordinates that is the upper left and the lower right.
+	 * The storage keeps them up to date, so this is cheap enough to be called every frame.
 	 */
 	public void detectGameDeckEdges() {
-		int[] coords = storage.detectGameDeckEdges();
-		minCardX = coords[0];
-		minCardY = coords[1];
-		maxCardX = coords[2];
-		maxCardY = coords[3];
+		minCardX = storage.getMinCardX();
+		minCardY = storage.getMinCardY();
+		maxCardX = storage.getMaxCardX();
+		maxCardY = storage.getMaxCardY();
 	}
 	
 	public double getZoom() {
@@ -314,6 +424,27 @@ public class GameController {
 		this.maxCardY = maxCardY;
 	}
 
+	public GameEngine getEngine() {
+		return engine;
+	}
+
+	public IsmctsBot getBot() {
+		return bot;
+	}
+
+	/**
+	 * Lets a bot play one of the players.
+	 * @param bot a bot playing in the storage of this controller.
+	 */
+	public void setBot(IsmctsBot bot) {
+		if(this.bot != null) {
+			cancelBotAction();
+			engine.removeListener(this.bot);
+		}
+		this.bot = bot;
+		engine.addListener(bot);
+	}
+
 	public GameStorage getStorage() {
 		return storage;
 	}
@@ -418,11 +549,11 @@ public class GameController {
 		this.draggingHint = draggingHint;
 	}
 
-	public byte getHintDragged() {
+	public long getHintDragged() {
 		return hintDragged;
 	}
 
-	public void setHintDragged(byte hintDragged) {
+	public void setHintDragged(long hintDragged) {
 		this.hintDragged = hintDragged;
 	}
 
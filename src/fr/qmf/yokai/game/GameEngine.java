@@ -0,0 +1,306 @@
+package fr.qmf.yokai.game;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Applies the rules of the game on a {@link GameStorage}, without any window, sound or scheduler,
+ * so that games may be played by bots or tests as fast as the rules allow.
+ * Each action checks that it is legal in the current stage, applies itself and then tells the {@link GameListener}s.
+ * An illegal action changes nothing and returns false.
+ * Applied actions are recorded in a {@link GameHistory}, so that they may be undone and redone,
+ * e.g. by the players or by searches playing and taking back hypothetical actions.
+ * @author LeFlo
+ *
+ */
+public class GameEngine {
+
+	public static final int DEFAULT_HISTORY_CAPACITY = 256; // More than the actions of a classic game.
+
+	private GameStorage storage;
+	private List<GameListener> listeners = new ArrayList<>(); // Walked by index, an iterator being garbage for every event.
+	private GameHistory history;
+
+	/**
+	 * @param storage the game to play, already initialized.
+	 */
+	public GameEngine(GameStorage storage) {
+		this(storage, DEFAULT_HISTORY_CAPACITY);
+	}
+
+	/**
+	 * @param storage the game to play, already initialized.
+	 * @param historyCapacity the number of actions which may be undone.
+	 */
+	public GameEngine(GameStorage storage, int historyCapacity) {
+		this.storage = storage;
+		this.history = new GameHistory(historyCapacity);
+	}
+
+	public void addListener(GameListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(GameListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Applies a packed action, e.g. one listed by an {@link ActionGenerator}.
+	 * @param action see {@link Action}.
+	 * @return true if the action was legal and applied.
+	 */
+	public boolean apply(long action) {
+		switch(Action.getType(action)) {
+		case Action.OBSERVE:
+			return observe(Action.getArgument(action, 0), Action.getArgument(action, 1), Action.getArgument(action, 2), Action.getArgument(action, 3));
+		case Action.MOVE:
+			return move(Action.getArgument(action, 0), Action.getArgument(action, 1), Action.getArgument(action, 2), Action.getArgument(action, 3));
+		case Action.DRAW_HINT:
+			return drawHint();
+		case Action.PLACE_HINT:
+			int hintIndex = Action.getArgument(action, 0);
+			if(hintIndex < 0 || hintIndex >= storage.getDiscoveredHints().size()) return false;
+			return placeHint(storage.getDiscoveredHints().get(hintIndex), Action.getArgument(action, 1), Action.getArgument(action, 2));
+		case Action.DECLARE_PEACE:
+			return declarePeace();
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Observes two cards. The cards are not flipped: what they are is for the caller to show.
+	 * Legal when the players have to observe, i.e. in {@link GameStage#PLAY_OR_GUESS} or {@link GameStage#OBSERVING}.
+	 * @param x1
+	 * @param y1
+	 * @param x2
+	 * @param y2
+	 * @return true if the action was legal and applied.
+	 */
+	public boolean observe(int x1, int y1, int x2, int y2) {
+		GameStage stage = storage.getCurrentStage();
+		if(stage != GameStage.PLAY_OR_GUESS && stage != GameStage.OBSERVING) return false;
+		if(x1 == x2 && y1 == y2) return false;
+		if(!isFreeCard(x1, y1) || !isFreeCard(x2, y2)) return false;
+
+		history.record(Action.observe(x1, y1, x2, y2), stage, 0, 0);
+		for(int i = 0; i < listeners.size(); i++) {
+			listeners.get(i).cardsObserved(x1, y1, x2, y2);
+		}
+		setStage(GameStage.MOVING);
+		actionApplied(Action.observe(x1, y1, x2, y2));
+		return true;
+	}
+
+	/**
+	 * Moves a card without hint to a cell where every card stays connected, then centers the board.
+	 * Legal in {@link GameStage#MOVING}.
+	 * @param fromX
+	 * @param fromY
+	 * @param toX
+	 * @param toY
+	 * @return true if the action was legal and applied.
+	 */
+	public boolean move(int fromX, int fromY, int toX, int toY) {
+		if(storage.getCurrentStage() != GameStage.MOVING) return false;
+		if(!isFreeCard(fromX, fromY)) return false;
+
+		storage.setCardMoving(fromX, fromY, true);
+		if(!storage.isCorrectPlacement(toX, toY)) {
+			storage.setCardMoving(fromX, fromY, false);
+			return false;
+		}
+		storage.moveCard(fromX, fromY, toX, toY);
+		for(int i = 0; i < listeners.size(); i++) {
+			listeners.get(i).cardMoved(fromX, fromY, toX, toY);
+		}
+
+		// Centers the board without the array centerBoard() makes.
+		int dx = storage.getCenterOffsetX(), dy = storage.getCenterOffsetY();
+		if(dx != 0 || dy != 0) {
+			storage.shiftBoard(dx, dy);
+			for(int i = 0; i < listeners.size(); i++) {
+				listeners.get(i).boardCentered(dx, dy);
+			}
+		}
+		history.record(Action.move(fromX, fromY, toX, toY), GameStage.MOVING, dx, dy);
+		setStage(GameStage.HINT);
+		actionApplied(Action.move(fromX, fromY, toX, toY));
+		return true;
+	}
+
+	/**
+	 * Draws the next undiscovered hint, then gives the turn to the other player.
+	 * Legal in {@link GameStage#HINT} while some hints are undiscovered.
+	 * @return true if the action was legal and applied.
+	 */
+	public boolean drawHint() {
+		if(storage.getCurrentStage() != GameStage.HINT) return false;
+		long hint = storage.drawHint();
+		if(hint == 0) return false;
+
+		history.record(Action.drawHint(), GameStage.HINT, 0, 0);
+		for(int i = 0; i < listeners.size(); i++) {
+			listeners.get(i).hintDrawn(hint);
+		}
+		endTurn();
+		actionApplied(Action.drawHint());
+		return true;
+	}
+
+	/**
+	 * Puts a discovered hint on a card without hint, then gives the turn to the other player.
+	 * The game ends once every hint is placed.
+	 * Legal in {@link GameStage#HINT}.
+	 * @param hint one of the discovered hints.
+	 * @param x
+	 * @param y
+	 * @return true if the action was legal and applied.
+	 */
+	public boolean placeHint(long hint, int x, int y) {
+		if(storage.getCurrentStage() != GameStage.HINT) return false;
+		int hintIndex = storage.getDiscoveredHints().indexOf(hint);
+		if(!isFreeCard(x, y) || hintIndex == -1) return false;
+
+		storage.placeHint(hintIndex, x, y);
+		history.record(Action.placeHint(hintIndex, x, y), GameStage.HINT, 0, 0);
+		for(int i = 0; i < listeners.size(); i++) {
+			listeners.get(i).hintPlaced(hint, x, y);
+		}
+		endTurn();
+
+		if(storage.getPlacedHints().size() == storage.getHints().length) {
+			endGame(true);
+		}
+		actionApplied(Action.placeHint(hintIndex, x, y));
+		return true;
+	}
+
+	/**
+	 * Declares that the Yokai are pleased, which ends the game and scores it.
+	 * Legal in {@link GameStage#PLAY_OR_GUESS}, instead of observing.
+	 * @return true if the action was legal and applied.
+	 */
+	public boolean declarePeace() {
+		if(storage.getCurrentStage() != GameStage.PLAY_OR_GUESS) return false;
+
+		endGame(false);
+		actionApplied(Action.declarePeace());
+		return true;
+	}
+
+	/**
+	 * Takes back the last applied action, telling the listeners as if it was played backwards:
+	 * a move is told as the board centered back then the card moved back, and a new stage is told for every action.
+	 * @return false if there was nothing to undo.
+	 */
+	public boolean undo() {
+		if(!history.canUndo()) return false;
+		undoLast();
+		for(int i = 0; i < listeners.size(); i++) {
+			listeners.get(i).actionUndone();
+		}
+		return true;
+	}
+
+	private void undoLast() {
+		long action = history.undo(), state = history.getUndoneState();
+		int x = Action.getArgument(action, 1), y = Action.getArgument(action, 2);
+
+		switch(Action.getType(action)) {
+		case Action.MOVE:
+			int dx = GameHistory.getArgument(state, 0), dy = GameHistory.getArgument(state, 1);
+			if(dx != 0 || dy != 0) {
+				storage.shiftBoard(-dx, -dy);
+				for(int i = 0; i < listeners.size(); i++) {
+					listeners.get(i).boardCentered(-dx, -dy);
+				}
+			}
+			int fromX = Action.getArgument(action, 0), fromY = Action.getArgument(action, 1);
+			int toX = Action.getArgument(action, 2), toY = Action.getArgument(action, 3);
+			storage.setCardMoving(toX, toY, true);
+			storage.moveCard(toX, toY, fromX, fromY);
+			for(int i = 0; i < listeners.size(); i++) {
+				listeners.get(i).cardMoved(toX, toY, fromX, fromY);
+			}
+			break;
+		case Action.DRAW_HINT:
+			storage.switchPlayers();
+			storage.undrawHint();
+			break;
+		case Action.PLACE_HINT:
+			storage.switchPlayers();
+			storage.unplaceHint(Action.getArgument(action, 0), x, y);
+			break;
+		case Action.DECLARE_PEACE:
+			storage.setScore(GameHistory.getArgument(state, 0));
+			break;
+		}
+		setStage(GameHistory.getStage(state));
+
+		// The game ended by itself with the last hint placed: undoes the hint too.
+		if(Action.getType(action) == Action.DECLARE_PEACE && GameHistory.getArgument(state, 1) == 1) {
+			undoLast();
+		}
+	}
+
+	/**
+	 * Applies again the last undone action.
+	 * @return false if there was nothing to redo.
+	 */
+	public boolean redo() {
+		if(!history.canRedo()) return false;
+		return apply(history.getRedo());
+	}
+
+	/**
+	 * Ends the game and scores it.
+	 * @param lastHint true if the game ends because the last hint was placed.
+	 */
+	private void endGame(boolean lastHint) {
+		history.record(Action.declarePeace(), storage.getCurrentStage(), storage.getScore(), lastHint ? 1 : 0);
+		setStage(GameStage.END);
+		storage.calculateScore();
+		for(int i = 0; i < listeners.size(); i++) {
+			listeners.get(i).gameEnded(storage.getScore());
+		}
+	}
+
+	public GameStorage getStorage() {
+		return storage;
+	}
+
+	public GameHistory getHistory() {
+		return history;
+	}
+
+	/**
+	 * @param x
+	 * @param y
+	 * @return true if there is a card without hint on this cell.
+	 */
+	private boolean isFreeCard(int x, int y) {
+		Card card = storage.getCard(x, y);
+		return card != null && !card.hasHint();
+	}
+
+	private void endTurn() {
+		storage.switchPlayers();
+		setStage(GameStage.PLAY_OR_GUESS);
+	}
+
+	private void actionApplied(long action) {
+		for(int i = 0; i < listeners.size(); i++) {
+			listeners.get(i).actionApplied(action);
+		}
+	}
+
+	private void setStage(GameStage stage) {
+		storage.setCurrentStage(stage);
+		for(int i = 0; i < listeners.size(); i++) {
+			listeners.get(i).stageChanged(stage);
+		}
+	}
+
+}
@@ -0,0 +1,117 @@
+package fr.qmf.yokai.game;
+
+/**
+ * The last actions applied by a {@link GameEngine}, each as a record of two longs: the action itself, packed as by {@link Action},
+ * and the state it takes to undo it.
+ * The records are kept in a ring buffer: once full, recording forgets the oldest one, so undoing and redoing
+ * costs the same and makes no garbage however long the game.
+ * Undone records are kept for redoing until another action is recorded.
+ * <br>
+ * The state holds the stage before the action in its 3 upper bits, then up to two arguments of 30 bits each,
+ * e.g. the shift of the board centered after a move: any action that {@link Action} packs may be recorded.
+ * @author LeFlo
+ *
+ */
+public class GameHistory {
+
+	private static final int STAGE_SHIFT = 61;
+	private static final int ARGUMENT_BITS = 30;
+	private static final long ARGUMENT_MASK = (1L << ARGUMENT_BITS) - 1;
+
+	private static final GameStage[] STAGES = GameStage.values();
+
+	private final long[] actions, states;
+	private final int mask;
+	// Number of records ever made up to the oldest one kept, the last one applied and the last one redoable.
+	private long first, cursor, last;
+
+	/**
+	 * @param capacity the number of actions kept, rounded up to a power of two.
+	 */
+	public GameHistory(int capacity) {
+		int length = Integer.highestOneBit(Math.max(capacity, 1) * 2 - 1);
+		actions = new long[length];
+		states = new long[length];
+		mask = length - 1;
+	}
+
+	/**
+	 * Records an applied action, forgetting the undone ones unless it is the next one to redo.
+	 * @param action see {@link Action}.
+	 * @param stage the stage before the action.
+	 * @param a the first argument of the state.
+	 * @param b the second argument of the state.
+	 */
+	public void record(long action, GameStage stage, int a, int b) {
+		long state = (long) stage.ordinal() << STAGE_SHIFT | (a & ARGUMENT_MASK) << ARGUMENT_BITS | (b & ARGUMENT_MASK);
+		int index = (int) cursor & mask;
+		if(cursor < last && actions[index] == action && states[index] == state) {
+			cursor++;
+			return;
+		}
+		actions[index] = action;
+		states[index] = state;
+		last = ++cursor;
+		if(cursor - first > actions.length) {
+			first = cursor - actions.length;
+		}
+	}
+
+	public boolean canUndo() {
+		return cursor > first;
+	}
+
+	public boolean canRedo() {
+		return cursor < last;
+	}
+
+	/**
+	 * Steps back over the last applied record, for the engine to undo it.
+	 * Its state is then given by {@link #getUndoneState()}.
+	 * @return the action.
+	 */
+	public long undo() {
+		return actions[(int) --cursor & mask];
+	}
+
+	/**
+	 * @return the state of the record last stepped back over, i.e. of the next action to redo.
+	 */
+	public long getUndoneState() {
+		return states[(int) cursor & mask];
+	}
+
+	/**
+	 * @return the next action to redo, which is stepped over once it is applied again.
+	 */
+	public long getRedo() {
+		return actions[(int) cursor & mask];
+	}
+
+	/**
+	 * Forgets every record.
+	 */
+	public void clear() {
+		first = cursor = last = 0;
+	}
+
+	/**
+	 * @param state see {@link #getUndoneState()}.
+	 * @return the stage before the recorded action.
+	 */
+	public static GameStage getStage(long state) {
+		return STAGES[(int) (state >>> STAGE_SHIFT)];
+	}
+
+	/**
+	 * @param state see {@link #getUndoneState()}.
+	 * @param i 0 or 1.
+	 * @return the i-th argument of the state.
+	 */
+	public static int getArgument(long state, int i) {
+		int shift = (1 - i)*ARGUMENT_BITS;
+		// Shifts the argument to the top then back down to get its sign.
+		return (int) ((state << (64 - ARGUMENT_BITS - shift)) >> (64 - ARGUMENT_BITS));
+	}
+
+}
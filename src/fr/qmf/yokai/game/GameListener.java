@@ -0,0 +1,75 @@
+package fr.qmf.yokai.game;
+
+/**
+ * Receives the events of a {@link GameEngine}, once the action causing them is applied.
+ * Every method does nothing by default, so a listener only overrides what it cares about,
+ * e.g. sounds or animations.
+ * @author LeFlo
+ *
+ */
+public interface GameListener {
+
+	/**
+	 * Called when a player observed two cards.
+	 * @param x1
+	 * @param y1
+	 * @param x2
+	 * @param y2
+	 */
+	default void cardsObserved(int x1, int y1, int x2, int y2) {}
+
+	/**
+	 * Called when a card moved. The coords are the ones before the board is centered again, see {@link #boardCentered(int, int)}.
+	 * @param fromX
+	 * @param fromY
+	 * @param toX
+	 * @param toY
+	 */
+	default void cardMoved(int fromX, int fromY, int toX, int toY) {}
+
+	/**
+	 * Called when the whole deck moved to stay centered on the board.
+	 * @param dx the amount of cells the cards moved by in x.
+	 * @param dy the amount of cells the cards moved by in y.
+	 */
+	default void boardCentered(int dx, int dy) {}
+
+	/**
+	 * Called when a hint is drawn from the undiscovered ones.
+	 * @param hint
+	 */
+	default void hintDrawn(long hint) {}
+
+	/**
+	 * Called when a hint is put on a card.
+	 * @param hint
+	 * @param x
+	 * @param y
+	 */
+	default void hintPlaced(long hint, int x, int y) {}
+
+	/**
+	 * Called when the game reaches another stage.
+	 * @param stage the new stage.
+	 */
+	default void stageChanged(GameStage stage) {}
+
+	/**
+	 * Called when the game ends, either because the Yokai were declared pleased or because the last hint was placed.
+	 * @param score the score of the game, -1 if the Yokai were not pleased.
+	 */
+	default void gameEnded(int score) {}
+
+	/**
+	 * Called once an action is applied, after the events it caused, redone actions included:
+	 * applying the same actions to the same game gives the same game.
+	 * @param action see {@link Action}.
+	 */
+	default void actionApplied(long action) {}
+
+	/**
+	 * Called once the last applied action is undone, after the events it caused, see {@link GameEngine#undo()}.
+	 */
+	default void actionUndone() {}
+
+}
@@ -24,6 +24,10 @@ public class Player implements Serializable {
 		return name;
 	}
 
+	public void setName(String name) {
+		this.name = name;
+	}
+
 
 	public int getId() {
 		return id;
@@ -0,0 +1,144 @@
+package fr.qmf.yokai.game;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * The settings of a game: how many families of Yokai there are,
+ * how many cards each family has and how many hints of each size are dealt.
+ * Hints are bitmasks of families, so there may be at most 64 families.
+ * @author LeFlo
+ *
+ */
+public class Variant implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final int MAX_FAMILIES = 64;
+
+	/**
+	 * The original game: 4 families of 4 cards, 2 hints of one family, 3 of two families and 2 of three families.
+	 */
+	public static final Variant CLASSIC = new Variant(4, 4, 2, 3, 2);
+
+	private final int familyCount;
+	private final int cardsPerFamily;
+	private final int[] hintCounts; // Number of hints showing i+1 families.
+
+	/**
+	 * @param familyCount between 1 and {@link #MAX_FAMILIES}.
+	 * @param cardsPerFamily at least 1.
+	 * @param hintCounts the number of hints showing 1 family, then 2 families and so on.
+	 * There may not be more hints of a size than there are distinct hints of that size.
+	 */
+	public Variant(int familyCount, int cardsPerFamily, int... hintCounts) {
+		if(familyCount < 1 || familyCount > MAX_FAMILIES) {
+			throw new IllegalArgumentException("A variant must have between 1 and " + MAX_FAMILIES + " families, got " + familyCount);
+		}
+		if(cardsPerFamily < 1) {
+			throw new IllegalArgumentException("A variant must have at least one card per family, got " + cardsPerFamily);
+		}
+		if(hintCounts.length > familyCount) {
+			throw new IllegalArgumentException("Hints may not show more than the " + familyCount + " families");
+		}
+		for(int i = 0; i < hintCounts.length; i++) {
+			if(hintCounts[i] < 0 || hintCounts[i] > combinations(familyCount, i + 1)) {
+				throw new IllegalArgumentException("There are not " + hintCounts[i] + " distinct hints showing " + (i+1) + " families out of " + familyCount);
+			}
+		}
+		this.familyCount = familyCount;
+		this.cardsPerFamily = cardsPerFamily;
+		this.hintCounts = hintCounts.clone();
+	}
+
+	/**
+	 * Creates a variant scaled from the classic one: as many cards per family as there are families,
+	 * and the hints scaled along.
+	 * @param familyCount between 4 and {@link #MAX_FAMILIES}, e.g. 8, 16 or 32 for 64, 256 or 1024 cards.
+	 * @return the variant.
+	 */
+	public static Variant square(int familyCount) {
+		return new Variant(familyCount, familyCount, familyCount/2, 3*familyCount/4, familyCount/2);
+	}
+
+	public int getFamilyCount() {
+		return familyCount;
+	}
+
+	public int getCardsPerFamily() {
+		return cardsPerFamily;
+	}
+
+	/**
+	 * @return the number of cards of the game.
+	 */
+	public int getCardCount() {
+		return familyCount * cardsPerFamily;
+	}
+
+	/**
+	 * @return the side of the square the cards are dealt in, the last row may not be full.
+	 */
+	public int getDeckLength() {
+		int length = (int) Math.sqrt(getCardCount());
+		return length * length < getCardCount() ? length + 1 : length;
+	}
+
+	/**
+	 * @param families
+	 * @return the number of hints showing this number of families.
+	 */
+	public int getHintCount(int families) {
+		return families >= 1 && families <= hintCounts.length ? hintCounts[families - 1] : 0;
+	}
+
+	/**
+	 * @return the number of hints of the game.
+	 */
+	public int getHintCount() {
+		int count = 0;
+		for(int hintCount : hintCounts) {
+			count += hintCount;
+		}
+		return count;
+	}
+
+	/**
+	 * Deals the hints of a game.
+	 * @param random
+	 * @return the hints, shuffled, see {@link YokaiType#getRandomHintArray(SplittableRandom, int, int...)}.
+	 */
+	public long[] getRandomHints(SplittableRandom random) {
+		return YokaiType.getRandomHintArray(random, familyCount, hintCounts);
+	}
+
+	/**
+	 * @return the largest number of families a hint shows.
+	 */
+	public int getMaxHintSize() {
+		return hintCounts.length;
+	}
+
+	/**
+	 * @param other
+	 * @return true if both variants have the same settings, e.g. to read a saved variant as {@link #CLASSIC}.
+	 */
+	public boolean isSameAs(Variant other) {
+		return familyCount == other.familyCount && cardsPerFamily == other.cardsPerFamily
+				&& Arrays.equals(hintCounts, other.hintCounts);
+	}
+
+	/**
+	 * @return the number of ways to pick k things out of n, capped to Integer.MAX_VALUE.
+	 */
+	private static long combinations(int n, int k) {
+		long result = 1;
+		for(int i = 1; i <= k; i++) {
+			result = result * (n - k + i) / i;
+			if(result > Integer.MAX_VALUE) return Integer.MAX_VALUE;
+		}
+		return result;
+	}
+
+}
@@ -2,8 +2,10 @@ package fr.qmf.yokai.game;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Random;
+import java.util.Set;
+import java.util.SplittableRandom;
 
 /**
  * Represents a YokaiType.
@@ -17,6 +19,22 @@ public enum YokaiType {
 	ROKUROKUBI("purple"),
 	KITSUNE("red");
 	
+	private static final YokaiType[] VALUES = values(); // values() copies the array on each call.
+	private static final int ALL_TYPES = (1 << VALUES.length) - 1;
+	private static final String[] HINT_NAMES = new String[ALL_TYPES + 1]; // Name of each set of YokaiTypes, indexed by its bitmask.
+	
+	static {
+		for(int typeMask = 1; typeMask <= ALL_TYPES; typeMask++) {
+			StringBuilder name = new StringBuilder();
+			for(YokaiType type : VALUES) {
+				if((typeMask & (1 << type.ordinal())) == 0) continue;
+				if(name.length() > 0) name.append('_');
+				name.append(type.getColor());
+			}
+			HINT_NAMES[typeMask] = name.toString();
+		}
+	}
+	
 	private String color;
 	
 	private YokaiType(String color) {
@@ -28,92 +46,84 @@ public enum YokaiType {
 	}
     
 	/**
-	 * Get a YokaiType array from a hint byte.
-	 * 
-	 * @param hint A byte between 0b0001 and 0b1110.
-	 * @return The corresponding YokaiTypes for the represented hint byte.
+	 * Gets the YokaiType drawn for a family. Variants with more families than YokaiTypes reuse them in turn.
+	 * @param family
+	 * @return the YokaiType of the family.
 	 */
-	public static YokaiType[] getYokaiFromHint(byte hint) {
-		if(hint == 0 || hint > 14) return null;
-		
-		List<YokaiType> list = new ArrayList<>(4);
-		
-		for(int i = values().length-1; i >=0 ; i--) {
-			if((hint & (0b1 << i)) != 0) {
-				list.add(values()[values().length - i -1]);
-			}
-		}
-		
-		return list.toArray(new YokaiType[list.size()]);
+	public static YokaiType of(int family) {
+		return VALUES[family % VALUES.length];
 	}
 	
 	/**
-	 * Transforms a given YokaiType array into a string joined with '_'.
-	 * @param yokais
-	 * @return The given Yokais joined with '_'.
+	 * Gets the YokaiTypes drawn for a hint, without allocating anything.
+	 * @param hint A bitmask of families, bit i being set if the hint shows the family i.
+	 * @return A bitmask of YokaiTypes, bit i being set if the hint shows the YokaiType of ordinal i.
 	 */
-	public static String getYokaisString(YokaiType[] yokais) {
-		String[] yokaiString = new String[yokais.length];
-		for(int k = 0; k < yokais.length; k++) {
-			yokaiString[k] = yokais[k].getColor();
+	public static int getTypeMask(long hint) {
+		// Families and YokaiTypes are the same in the classic game.
+		if((hint & ~ALL_TYPES) == 0) return (int) hint;
+		
+		int typeMask = 0;
+		for(long bits = hint; bits != 0; bits &= bits - 1) {
+			typeMask |= 1 << of(Long.numberOfTrailingZeros(bits)).ordinal();
 		}
-		return String.join("_", yokaiString);
+		return typeMask;
 	}
 	
 	/**
-	 * Generates with the specified a shuffled byte array with all bytes between 0b0001 and 0b1110
-	 * used to represent a hint. Each byte represents 1 to 3 Yokai on a hint.
+	 * @param typeMask A bitmask of YokaiTypes, see {@link #getTypeMask(long)}.
+	 * @return The colors of the YokaiTypes joined with '_', e.g. "blue_red", or null for no YokaiType.
+	 */
+	public static String getHintName(int typeMask) {
+		return HINT_NAMES[typeMask];
+	}
+    
+	/**
+	 * Generates a shuffled array of distinct hints of the given sizes.
+	 * Each hint is a bitmask of the families it shows, see {@link #getTypeMask(long)}.
 	 * 
 	 * @param random The random instance to be used.
-	 * @param singleColorNumber The number of hints of single color
-	 * @param doubleColorNumber The number of hints of double color
-	 * @param tripleColorNumber The number of hints of triple color
-	 * @return A bytes array containing all bytes between 0b0001 and 0b1110.
+	 * @param familyCount The number of families, at most 64.
+	 * @param hintCounts The number of hints showing 1 family, then 2 families and so on.
+	 * There may not be more hints of a size than there are distinct hints of that size.
+	 * @return A hints array, none of them being 0.
 	 */
-	public static byte[] getRandomHintArray(Random random, int singleColorNumber, int doubleColorNumber, int tripleColorNumber) {
-		List<Integer> bytes = new ArrayList<>();
-		for(int i = 0; i < singleColorNumber; i++) {
-			int n1 = 0;
-			int hint = 0;
-			do {
-				n1 = random.nextInt(values().length);
-				hint = (int) Math.pow(2, n1);
-			} while(bytes.contains(hint));
-			bytes.add(hint);
+	public static long[] getRandomHintArray(SplittableRandom random, int familyCount, int... hintCounts) {
+		Set<Long> hints = new HashSet<>();
+		List<Long> hintList = new ArrayList<>();
+		int[] families = new int[familyCount];
+		for(int i = 0; i < familyCount; i++) {
+			families[i] = i;
 		}
-		for(int i = 0; i < doubleColorNumber; i++) {
-			int n1 = random.nextInt(values().length);
-			int hint = 0;
-			do {
-				n1 = random.nextInt(values().length);
-				int n2 = 0;
+		
+		for(int size = 1; size <= hintCounts.length; size++) {
+			for(int i = 0; i < hintCounts[size-1]; i++) {
+				long hint = 0;
 				do {
-					n2 = random.nextInt(values().length);
-				} while(n1 == n2);
-				hint = (int) (Math.pow(2, n1) + Math.pow(2, n2));
-			} while(bytes.contains(hint));
-			
-			
-			bytes.add(hint);
-		}
-		for(int i = 0; i < tripleColorNumber; i++) {
-			int n1 = 0;
-			int hint = 0;
-			do {
-				n1 = random.nextInt(values().length);
-				hint = 15-((int) Math.pow(2, n1));
-			} while(bytes.contains(hint));
-			bytes.add(hint);
+					// Picks size distinct families with a partial shuffle.
+					hint = 0;
+					for(int k = 0; k < size; k++) {
+						int j = k + random.nextInt(familyCount - k);
+						int family = families[j];
+						families[j] = families[k];
+						families[k] = family;
+						hint |= 1L << family;
+					}
+				} while(!hints.add(hint));
+				hintList.add(hint);
+			}
 		}
 		
-		Collections.shuffle(bytes, random);
+		for(int i = hintList.size() - 1; i > 0; i--) {
+			Collections.swap(hintList, i, random.nextInt(i + 1));
+		}
 		
-		byte[] bytesArray = new byte[bytes.size()];
-		for(int i = 0; i < bytesArray.length; i++) {
-			bytesArray[i] = bytes.get(i).byteValue();
+		long[] hintsArray = new long[hintList.size()];
+		for(int i = 0; i < hintsArray.length; i++) {
+			hintsArray[i] = hintList.get(i);
 		}
 		
-		return bytesArray;
+		return hintsArray;
 	}
 	
 }
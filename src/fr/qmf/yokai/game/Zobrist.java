@@ -0,0 +1,100 @@
+package fr.qmf.yokai.game;
+
+/**
+ * Zobrist keys of the features of a game: a game hashes to the xor of the keys of its features,
+ * so adding or taking off a feature is a single xor, see {@link GameStorage#getHash()}.
+ * The board being unbounded, the keys are not drawn in tables but mixed from the features,
+ * which gives the same well spread 64 bits keys for any cell.
+ * @author LeFlo
+ *
+ */
+public class Zobrist {
+
+	// Kinds of features, so that two features of different kinds never share a key.
+	private static final long CARD = 1L << 56;
+	private static final long HINT = 2L << 56;
+	private static final long STAGE = 3L << 56;
+	private static final long PLAYER = 4L << 56;
+	private static final long PILE = 5L << 56;
+	private static final long DISCOVERED = 6L << 56;
+	private static final long SHOWN = 7L << 56;
+
+	private Zobrist() {}
+
+	/**
+	 * @param cardX
+	 * @param cardY
+	 * @param family
+	 * @return the key of a card of this family on this cell.
+	 */
+	public static long card(int cardX, int cardY, int family) {
+		return mix(CARD | (long) family << 32 | CardMap.key(cardX, cardY) & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * @param cardX
+	 * @param cardY
+	 * @param hint a bitmask of families, not 0.
+	 * @return the key of this hint put on the card of this cell.
+	 */
+	public static long hint(int cardX, int cardY, long hint) {
+		return mix(mix(HINT | CardMap.key(cardX, cardY) & 0xFFFFFFFFL) ^ hint);
+	}
+
+	/**
+	 * @param stage
+	 * @return the key of the game being in this stage.
+	 */
+	public static long stage(GameStage stage) {
+		return mix(STAGE | stage.ordinal());
+	}
+
+	/**
+	 * @param id the id of a player.
+	 * @return the key of this player being the one to play.
+	 */
+	public static long player(int id) {
+		return mix(PLAYER | id);
+	}
+
+	/**
+	 * @param index the index of the hint in the pile, see {@link GameStorage#getHints()}.
+	 * @param hint a bitmask of families, 0 once drawn.
+	 * @return the key of this hint lying at this place of the pile.
+	 */
+	public static long pileHint(int index, long hint) {
+		return mix(mix(PILE | index) ^ hint);
+	}
+
+	/**
+	 * @param index the index of the hint in {@link GameStorage#getDiscoveredHints()}.
+	 * @param hint a bitmask of families.
+	 * @return the key of this hint discovered at this index.
+	 */
+	public static long discoveredHint(int index, long hint) {
+		return mix(mix(DISCOVERED | index) ^ hint);
+	}
+
+	/**
+	 * @param index 0 for the first card shown, 1 for the second one.
+	 * @param cardX
+	 * @param cardY
+	 * @return the key of the card of this cell being shown at this index.
+	 */
+	public static long shownCard(int index, int cardX, int cardY) {
+		return mix(SHOWN | (long) index << 32 | CardMap.key(cardX, cardY) & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Finalizer of SplitMix64: every bit of the value changes about half the bits of the key.
+	 * @param value
+	 * @return the mixed value.
+	 */
+	static long mix(long value) {
+		long z = value + 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+}
@@ -0,0 +1,530 @@
+package fr.qmf.yokai.game.bot;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import fr.qmf.yokai.game.Action;
+import fr.qmf.yokai.game.ActionGenerator;
+import fr.qmf.yokai.game.BeliefTracker;
+import fr.qmf.yokai.game.GameEngine;
+import fr.qmf.yokai.game.GameListener;
+import fr.qmf.yokai.game.GameStage;
+import fr.qmf.yokai.game.GameStorage;
+
+/**
+ * A player choosing its actions with information-set Monte Carlo tree search.
+ * The families of the cards it has not observed and the undrawn hints are hidden from it:
+ * each iteration of the search deals them again at random, consistently with what its {@link BeliefTracker} says,
+ * then goes down the tree and evaluates the state it reaches.
+ * Playing the rest of the game at random almost never pleases the Yokai, so the state is evaluated directly instead:
+ * a victory by its score, any other state by how close the families are to be reunited.
+ * Which actions are legal does not depend on the hidden cards, so every deal shares the same tree of actions.
+ *
+ * Each worker thread searches a tree of its own, kept in primitive arrays reused from one move to the next,
+ * and the visits of the roots are summed once the time budget is spent.
+ * As the arrays are reused, a search stops the previous one and waits for it before starting.
+ * The random of the bot is only used by the thread starting the searches, which splits one for each worker and each search.
+ * Observing is a single choice of the tree: which cards are observed is only worth what they teach,
+ * which the search cannot value, so the bot observes cards it has not seen yet.
+ * @author LeFlo
+ *
+ */
+public class IsmctsBot implements GameListener {
+
+	public static final int NODE_CAPACITY = 1 << 17; // Nodes of the tree of each worker, the tree stops growing once they are used.
+	private static final double EXPLORATION = 0.7;
+	private static final int DEAL_ATTEMPTS = 16; // Deals tried against the beliefs before shuffling the unknown families.
+
+	private final GameStorage storage;
+	private final int seat;
+	private long timeBudget; // In nanoseconds.
+
+	private final ThreadPoolExecutor executor;
+	private final Worker[] workers;
+	private final SplittableRandom random;
+
+	private CompletableFuture<Long> searching; // Last search started, null once it was waited for.
+	private AtomicBoolean cancelled; // Stops the workers of the last search.
+
+	private final BeliefTracker beliefs;
+
+	/**
+	 * @param storage the game the bot plays in, already initialized.
+	 * @param seat the id of the player the bot plays.
+	 * @param threads the number of threads to search on.
+	 * @param timeBudget the time to search each action for, in milliseconds.
+	 * @param random where the random choices of the bot come from.
+	 */
+	public IsmctsBot(GameStorage storage, int seat, int threads, long timeBudget, SplittableRandom random) {
+		this.storage = storage;
+		this.seat = seat;
+		this.random = random;
+		setTimeBudget(timeBudget);
+
+		// Idle threads stop after a while, so a bot left behind does not keep them.
+		executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+			Thread thread = new Thread(runnable, "IsmctsBot");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.allowCoreThreadTimeOut(true);
+		workers = new Worker[threads];
+		for(int i = 0; i < threads; i++) {
+			workers[i] = new Worker();
+		}
+
+		// The hints are not trusted: the search places them for what they score, not for what they tell.
+		beliefs = new BeliefTracker(storage, seat, false);
+	}
+
+	/**
+	 * Starts searching the action of the bot in the current state of the game, which is copied first:
+	 * the game may go on while the workers search.
+	 * The previous search is cancelled and waited for first.
+	 * @return the chosen action, once the time budget is spent, see {@link Action}.
+	 * Declaring peace if the game is over.
+	 */
+	public CompletableFuture<Long> search() {
+		cancel();
+		GameStorage root = storage.fork();
+		long[] domains = new long[root.getCardCount()];
+		for(int i = 0; i < domains.length; i++) {
+			domains[i] = beliefs.getDomain(i);
+		}
+		int[] order = sortByDomainSize(domains);
+		long deadline = System.nanoTime() + timeBudget;
+		AtomicBoolean cancelled = new AtomicBoolean();
+		SplittableRandom choiceRandom = random.split();
+
+		CompletableFuture<?>[] searches = new CompletableFuture<?>[workers.length];
+		for(int i = 0; i < workers.length; i++) {
+			Worker worker = workers[i];
+			SplittableRandom workerRandom = random.split();
+			searches[i] = CompletableFuture.runAsync(() -> worker.search(root, domains, order, deadline, cancelled, workerRandom), executor);
+		}
+		this.cancelled = cancelled;
+		searching = CompletableFuture.allOf(searches).thenApply(done -> bestAction(root, domains, choiceRandom));
+		// A copy, so that cancelling what is returned does not keep the next search from waiting for the workers.
+		return searching.copy();
+	}
+
+	/**
+	 * Stops the last search and waits for its workers, e.g. when the game it searches was taken back.
+	 * Its action is then not to be played.
+	 */
+	public void cancel() {
+		if(searching == null) return;
+		cancelled.set(true);
+		try {
+			searching.join();
+		} catch (CompletionException | CancellationException e) {
+			// The search failed, there is nothing left to wait for.
+		}
+		searching = null;
+	}
+
+	/**
+	 * Searches the action of the bot on the current thread, for the whole time budget.
+	 * @return the chosen action, see {@link #search()}.
+	 */
+	public long chooseAction() {
+		try {
+			return search().get();
+		} catch (InterruptedException | ExecutionException e) {
+			throw new IllegalStateException("The search failed", e);
+		}
+	}
+
+	/**
+	 * Remembers the cards the bot observes. The other player keeps what they see to themselves.
+	 */
+	@Override
+	public void cardsObserved(int x1, int y1, int x2, int y2) {
+		beliefs.cardsObserved(x1, y1, x2, y2);
+	}
+
+	@Override
+	public void hintPlaced(long hint, int x, int y) {
+		beliefs.hintPlaced(hint, x, y);
+	}
+
+	/**
+	 * @return the card indexes, the ones which may be the fewest families first, so that dealing them seldom fails.
+	 */
+	private static int[] sortByDomainSize(long[] domains) {
+		int[] order = new int[domains.length];
+		for(int i = 0; i < order.length; i++) {
+			int index = i, j = i;
+			for(; j > 0 && Long.bitCount(domains[order[j - 1]]) > Long.bitCount(domains[index]); j--) {
+				order[j] = order[j - 1];
+			}
+			order[j] = index;
+		}
+		return order;
+	}
+
+	/**
+	 * Sums the visits of the roots of every worker and picks the most visited action.
+	 */
+	private long bestAction(GameStorage root, long[] domains, SplittableRandom random) {
+		int childCount = workers[0].childCounts[0];
+		if(childCount == 0) return Action.declarePeace();
+
+		long best = Action.declarePeace();
+		long bestVisits = -1;
+		for(int child = 0; child < childCount; child++) {
+			long visits = 0;
+			for(Worker worker : workers) {
+				// Every worker lists the actions of the root in the same order.
+				visits += worker.visits[worker.firstChildren[0] + child];
+			}
+			if(visits > bestVisits) {
+				bestVisits = visits;
+				best = workers[0].nodeActions[workers[0].firstChildren[0] + child];
+			}
+		}
+
+		if(Action.getType(best) == Action.OBSERVE) {
+			return chooseObservation(root, domains, random);
+		}
+		return best;
+	}
+
+	/**
+	 * Picks two cards without hint, the ones whose family the bot does not know first.
+	 */
+	private long chooseObservation(GameStorage root, long[] domains, SplittableRandom random) {
+		int[] picked = {-1, -1};
+		for(int pick = 0; pick < 2; pick++) {
+			int candidates = 0;
+			for(int pass = 0; pass < 2 && candidates == 0; pass++) {
+				for(int i = 0; i < root.getCardCount(); i++) {
+					if(root.getCard(i).hasHint() || i == picked[0] || (pass == 0 && Long.bitCount(domains[i]) == 1)) continue;
+					// Reservoir sampling, to pick one of the candidates at random.
+					candidates++;
+					if(random.nextInt(candidates) == 0) {
+						picked[pick] = i;
+					}
+				}
+			}
+		}
+		return Action.observe(root.getCardX(picked[0]), root.getCardY(picked[0]), root.getCardX(picked[1]), root.getCardY(picked[1]));
+	}
+
+	public int getSeat() {
+		return seat;
+	}
+
+	public BeliefTracker getBeliefs() {
+		return beliefs;
+	}
+
+	/**
+	 * @return the time to search each action for, in milliseconds.
+	 */
+	public long getTimeBudget() {
+		return TimeUnit.NANOSECONDS.toMillis(timeBudget);
+	}
+
+	/**
+	 * @param timeBudget the time to search each action for, in milliseconds.
+	 */
+	public void setTimeBudget(long timeBudget) {
+		this.timeBudget = TimeUnit.MILLISECONDS.toNanos(timeBudget);
+	}
+
+	/**
+	 * Searches a tree of its own on one thread at a time.
+	 * The nodes are stored in parallel arrays: the action leading to each node,
+	 * where its children start, as the children of a node are stored next to each other, how many they are, 0 before it is expanded,
+	 * and how often it was visited with the sum of the rewards.
+	 */
+	private class Worker {
+
+		private SplittableRandom random; // Split for each search.
+
+		private final long[] nodeActions = new long[NODE_CAPACITY];
+		private final int[] firstChildren = new int[NODE_CAPACITY];
+		private final int[] childCounts = new int[NODE_CAPACITY];
+		private final int[] visits = new int[NODE_CAPACITY];
+		private final double[] rewards = new double[NODE_CAPACITY];
+		private int nodeCount;
+
+		private long[] actions = new long[256];
+		private int[] path = new int[64]; // Nodes visited by the current iteration.
+		private int[] remainingCards = new int[0]; // Cards of each family left to deal.
+		private int[] dealtFamilies = new int[0];
+		private int[] unknownFamilies = new int[0];
+		private int[] hintSizes = new int[0];
+		private int[] families = new int[0]; // Shuffled to draw distinct families for a hint.
+
+		// Game each iteration is played on, restored from the root every time.
+		private GameStorage game;
+		private GameEngine engine;
+		private ActionGenerator generator;
+
+		private void search(GameStorage root, long[] domains, int[] order, long deadline, AtomicBoolean cancelled, SplittableRandom random) {
+			this.random = random;
+			nodeCount = 1;
+			childCounts[0] = 0;
+			visits[0] = 0;
+			rewards[0] = 0;
+			do {
+				iterate(root, domains, order);
+			} while(System.nanoTime() < deadline && !cancelled.get());
+		}
+
+		private void iterate(GameStorage root, long[] domains, int[] order) {
+			determinize(root, domains, order);
+
+			// Goes down the tree until a node never visited, expanding the nodes on the way.
+			int node = 0;
+			int depth = 0;
+			path[depth++] = node;
+			while(game.getCurrentStage() != GameStage.END) {
+				if(childCounts[node] == 0 && !expand(node, game, generator)) break;
+				node = select(node);
+				engine.apply(nodeActions[node]);
+				if(depth == path.length) {
+					path = Arrays.copyOf(path, depth * 2);
+				}
+				path[depth++] = node;
+				if(visits[node] == 0) break;
+			}
+
+			double reward = evaluate(game);
+			for(int i = 0; i < depth; i++) {
+				visits[path[i]]++;
+				rewards[path[i]] += reward;
+			}
+		}
+
+		/**
+		 * Restores the game of the worker from the root, dealing what the bot cannot know again.
+		 * Which families the cards hold is public, not which card holds which,
+		 * and only the sizes of the undrawn hints are public.
+		 */
+		private void determinize(GameStorage root, long[] domains, int[] order) {
+			if(game == null) {
+				game = root.fork();
+				engine = new GameEngine(game);
+				generator = new ActionGenerator(game);
+			} else {
+				game.restore(root);
+			}
+			int cardCount = game.getCardCount();
+			if(dealtFamilies.length < cardCount) {
+				dealtFamilies = new int[cardCount];
+				unknownFamilies = new int[cardCount];
+			}
+
+			boolean dealt = false;
+			for(int attempt = 0; attempt < DEAL_ATTEMPTS && !dealt; attempt++) {
+				dealt = deal(game, domains, order);
+			}
+			if(dealt) {
+				for(int i = 0; i < cardCount; i++) {
+					if(game.getCard(i).getFamily() != dealtFamilies[i]) {
+						game.setCardFamily(game.getCardX(i), game.getCardY(i), dealtFamilies[i]);
+					}
+				}
+			} else {
+				// The beliefs are too tight to deal at random: shuffles the families of the cards whose family is not known.
+				int unknownCount = 0;
+				for(int i = 0; i < cardCount; i++) {
+					if(Long.bitCount(domains[i]) != 1) {
+						unknownFamilies[unknownCount++] = game.getCard(i).getFamily();
+					}
+				}
+				shuffle(unknownFamilies, unknownCount);
+				for(int i = 0, k = 0; i < cardCount; i++) {
+					if(Long.bitCount(domains[i]) != 1) {
+						game.setCardFamily(game.getCardX(i), game.getCardY(i), unknownFamilies[k++]);
+					}
+				}
+			}
+
+			long[] hints = game.getHints();
+			int next = game.getDiscoveredHints().size() + game.getPlacedHints().size();
+			if(hintSizes.length < hints.length) {
+				hintSizes = new int[hints.length];
+			}
+			int undrawn = hints.length - next;
+			for(int h = 0; h < undrawn; h++) {
+				hintSizes[h] = Long.bitCount(hints[next + h]);
+				game.setHint(next + h, 0);
+			}
+			shuffle(hintSizes, undrawn);
+			for(int h = 0; h < undrawn; h++) {
+				long hint;
+				do {
+					hint = randomHint(hintSizes[h], game.getVariant().getFamilyCount());
+				} while(isDealt(game, hint));
+				game.setHint(next + h, hint);
+			}
+		}
+
+		/**
+		 * Deals a family of its domain to each card in turn, weighted by the cards of each family left to deal.
+		 * @return false if a card was left without any family to deal.
+		 */
+		private boolean deal(GameStorage game, long[] domains, int[] order) {
+			int familyCount = game.getVariant().getFamilyCount();
+			if(remainingCards.length != familyCount) {
+				remainingCards = new int[familyCount];
+			}
+			for(int family = 0; family < familyCount; family++) {
+				remainingCards[family] = game.getVariant().getCardsPerFamily();
+			}
+
+			for(int index : order) {
+				int total = 0;
+				for(long rest = domains[index]; rest != 0; rest &= rest - 1) {
+					total += remainingCards[Long.numberOfTrailingZeros(rest)];
+				}
+				if(total == 0) return false;
+
+				int pick = random.nextInt(total);
+				for(long rest = domains[index]; ; rest &= rest - 1) {
+					int family = Long.numberOfTrailingZeros(rest);
+					pick -= remainingCards[family];
+					if(pick < 0) {
+						remainingCards[family]--;
+						dealtFamilies[index] = family;
+						break;
+					}
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * @return a hint showing size distinct families.
+		 */
+		private long randomHint(int size, int familyCount) {
+			if(families.length != familyCount) {
+				families = new int[familyCount];
+				for(int i = 0; i < familyCount; i++) {
+					families[i] = i;
+				}
+			}
+			long hint = 0;
+			for(int k = 0; k < size; k++) {
+				int j = k + random.nextInt(familyCount - k);
+				int family = families[j];
+				families[j] = families[k];
+				families[k] = family;
+				hint |= 1L << family;
+			}
+			return hint;
+		}
+
+		private boolean isDealt(GameStorage game, long hint) {
+			for(long dealt : game.getHints()) {
+				if(dealt == hint) return true;
+			}
+			for(int i = 0; i < game.getDiscoveredHints().size(); i++) {
+				if(game.getDiscoveredHints().get(i) == hint) return true;
+			}
+			for(int i = 0; i < game.getPlacedHints().size(); i++) {
+				if(game.getPlacedHints().get(i) == hint) return true;
+			}
+			return false;
+		}
+
+		private void shuffle(int[] array, int length) {
+			for(int i = length - 1; i > 0; i--) {
+				int j = random.nextInt(i + 1);
+				int value = array[j];
+				array[j] = array[i];
+				array[i] = value;
+			}
+		}
+
+		/**
+		 * Adds the children of a node, observing being a single child.
+		 * @return false if the tree is full.
+		 */
+		private boolean expand(int node, GameStorage game, ActionGenerator generator) {
+			int count = generate(generator);
+			GameStage stage = game.getCurrentStage();
+			if(stage == GameStage.PLAY_OR_GUESS) {
+				// Peace is listed last.
+				actions[1] = actions[count - 1];
+				count = Math.min(count, 2);
+			} else if(stage == GameStage.OBSERVING) {
+				count = Math.min(count, 1);
+			}
+			if(nodeCount + count > NODE_CAPACITY) return false;
+
+			firstChildren[node] = nodeCount;
+			for(int i = 0; i < count; i++) {
+				nodeActions[nodeCount] = actions[i];
+				childCounts[nodeCount] = 0;
+				visits[nodeCount] = 0;
+				rewards[nodeCount] = 0;
+				nodeCount++;
+			}
+			childCounts[node] = count;
+			return true;
+		}
+
+		/**
+		 * @return the child of the node to visit, the first one never visited or the best one by UCB1.
+		 */
+		private int select(int node) {
+			int first = firstChildren[node];
+			double logVisits = Math.log(visits[node]);
+			int best = first;
+			double bestValue = Double.NEGATIVE_INFINITY;
+			for(int child = first; child < first + childCounts[node]; child++) {
+				if(visits[child] == 0) return child;
+				double value = rewards[child] / visits[child] + EXPLORATION * Math.sqrt(logVisits / visits[child]);
+				if(value > bestValue) {
+					bestValue = value;
+					best = child;
+				}
+			}
+			return best;
+		}
+
+		private int generate(ActionGenerator generator) {
+			int count = generator.generate(actions);
+			if(count > actions.length) {
+				actions = new long[Integer.highestOneBit(count) * 2];
+				count = generator.generate(actions);
+			}
+			return count;
+		}
+
+		/**
+		 * @return the worth of a state between 0 and 1 for the players, the same for both as they play together.
+		 * A victory, or a state where peace may be declared, is worth above one half, depending on its score.
+		 * A defeat is worth nothing, and the other states less than one half, the more the fewer groups the families form.
+		 */
+		private double evaluate(GameStorage game) {
+			int maxScore = 5 * game.getHints().length;
+			int score = game.getCurrentStage() == GameStage.END ? game.getScore() : game.previewScore();
+			if(score >= 0) {
+				return 0.5 + 0.5 * Math.min(1, score / (double) maxScore);
+			}
+			if(game.getCurrentStage() == GameStage.END) return 0;
+
+			// Groups beyond one per family, at most one per card beyond the first of each family.
+			int familyCount = game.getVariant().getFamilyCount();
+			double split = (game.getFamilyGroupCount() - familyCount) / (double) (game.getCardCount() - familyCount);
+			int hintScore = game.getDiscoveredHints().size() * 2 + (game.getHints().length - game.getDiscoveredHints().size() - game.getPlacedHints().size()) * 5;
+			return 0.4 * (1 - split) + 0.1 * Math.max(0, hintScore / (double) maxScore);
+		}
+
+	}
+
+}
@@ -11,7 +11,6 @@ import fr.qmf.yokai.game.Card;
 import fr.qmf.yokai.game.GameController;
 import fr.qmf.yokai.game.GameStage;
 import fr.qmf.yokai.game.GameStorage;
-import fr.qmf.yokai.game.YokaiType;
 import fr.qmf.yokai.io.Textures;
 import fr.qmf.yokai.ui.UILayer;
 import fr.qmf.yokai.ui.Window;
@@ -24,6 +23,9 @@ import fr.qmf.yokai.ui.Window;
 public class CardsLayer extends UILayer {
 	public static final int DEFAULT_CARD_SIZE = 100;
 	public static final int CARD_MARGIN = 18;
+	
+	private static final Color LEGAL_DESTINATION_COLOR = new Color(255, 255, 255, 40);
+	private static final Color LIFTABLE_CARD_COLOR = new Color(255, 255, 255, 120);
 
 	private YokaiGame game;
 
@@ -40,75 +42,75 @@ public class CardsLayer extends UILayer {
 		double animationDelta = 1f/game.getTargetFPS();
 
 		GameStorage storage = game.getGameStorage();
-		Card[][] board = storage.getBoard();
 		
-		width = board[0].length*(DEFAULT_CARD_SIZE + CARD_MARGIN);
-		height = board.length*(DEFAULT_CARD_SIZE + CARD_MARGIN);
+		width = GameStorage.BOARD_LENGTH*(DEFAULT_CARD_SIZE + CARD_MARGIN);
+		height = GameStorage.BOARD_LENGTH*(DEFAULT_CARD_SIZE + CARD_MARGIN);
 		
-		for(int i = 0; i < board[0].length; i++) {
-			for(int j = 0; j < board.length; j++) {
-				Card card = board[i][j];
-				if(card == null) continue;
-				
-				BufferedImage texture = Textures.getTexture("cards/back");
-				if(card.isShown()) {
-					texture = Textures.getTexture("cards/" + card.getType().getColor());
-				} else if(card.hasHint()) {
-					YokaiType[] yokaiTypes = YokaiType.getYokaiFromHint(card.getHint());
-					texture = Textures.getTexture("hints/" + YokaiType.getYokaisString(yokaiTypes));
+		for(int c = 0; c < storage.getCardCount(); c++) {
+			Card card = storage.getCard(c);
+			int i = storage.getCardY(c), j = storage.getCardX(c);
+			
+			BufferedImage texture = Textures.getTexture("cards/back");
+			if(card.isShown()) {
+				texture = Textures.getCardTexture(card.getType());
+			} else if(card.hasHint()) {
+				texture = Textures.getHintTexture(card.getHint());
+			}
+			
+			double animationTime = 0;
+			if(card.isAnimated()) {
+				card.setAnimationTime(card.getAnimationTime() + animationDelta);
+				if(card.getAnimationTime() >= 0) {
+					animationTime = card.getAnimationTime();
 				}
-				
-				double animationTime = 0;
-				if(card.isAnimated()) {
-					card.setAnimationTime(card.getAnimationTime() + animationDelta);
-					if(card.getAnimationTime() >= 0) {
-						animationTime = card.getAnimationTime();
-					}
-					if(animationTime >= Card.ANIMATION_DURATION/2) {
-						if(card.isShown()) {
-							texture = Textures.getTexture("cards/back");
-						} else {
-							texture = Textures.getTexture("cards/" + card.getType().getColor());
-						}
-					}
-					if(animationTime >= Card.ANIMATION_DURATION) {
-						card.setAnimated(false);
-						card.setShown(!card.isShown());
+				if(animationTime >= Card.ANIMATION_DURATION/2) {
+					if(card.isShown()) {
+						texture = Textures.getTexture("cards/back");
+					} else {
+						texture = Textures.getCardTexture(card.getType());
 					}
 				}
-				
-				if(controller.isDraggingCard() && j == controller.getXCardDrag() && i == controller.getYCardDrag()) {
-					g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.5f));
+				if(animationTime >= Card.ANIMATION_DURATION) {
+					card.setAnimated(false);
+					card.setShown(!card.isShown());
 				}
-				
-				g.drawImage(texture, j*(DEFAULT_CARD_SIZE + CARD_MARGIN) + (int)(card.isAnimated() ? DEFAULT_CARD_SIZE*(-Math.abs(animationTime/Card.ANIMATION_DURATION-0.5)+0.5) : 0),
-						i*(DEFAULT_CARD_SIZE + CARD_MARGIN),
-									(int) (DEFAULT_CARD_SIZE * (card.isAnimated() ? Math.abs((Card.ANIMATION_DURATION-2*animationTime)/Card.ANIMATION_DURATION) : 1)), DEFAULT_CARD_SIZE, null);
+			}
 			
-				if(controller.isDraggingCard() && j == controller.getXCardDrag() && i == controller.getYCardDrag()) {
-					g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 1f));
-				}
+			if(controller.isDraggingCard() && j == controller.getXCardDrag() && i == controller.getYCardDrag()) {
+				g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.5f));
+			}
+			
+			g.drawImage(texture, j*(DEFAULT_CARD_SIZE + CARD_MARGIN) + (int)(card.isAnimated() ? DEFAULT_CARD_SIZE*(-Math.abs(animationTime/Card.ANIMATION_DURATION-0.5)+0.5) : 0),
+					i*(DEFAULT_CARD_SIZE + CARD_MARGIN),
+								(int) (DEFAULT_CARD_SIZE * (card.isAnimated() ? Math.abs((Card.ANIMATION_DURATION-2*animationTime)/Card.ANIMATION_DURATION) : 1)), DEFAULT_CARD_SIZE, null);
+		
+			if(controller.isDraggingCard() && j == controller.getXCardDrag() && i == controller.getYCardDrag()) {
+				g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 1f));
+			}
+		}
+		
+		if(storage.getCurrentStage().equals(GameStage.MOVING) && !controller.isDraggingCard()) {
+			g.setColor(LIFTABLE_CARD_COLOR);
+			for(int i = 0; i < storage.getLiftableCardCount(); i++) {
+				g.drawRect(storage.getLiftableCardX(i)*(DEFAULT_CARD_SIZE + CARD_MARGIN) - 2, storage.getLiftableCardY(i)*(DEFAULT_CARD_SIZE + CARD_MARGIN) - 2, DEFAULT_CARD_SIZE + 3, DEFAULT_CARD_SIZE + 3);
 			}
 		}
 		
 		if(storage.getCurrentStage().equals(GameStage.END)) {
 			float hintAlpha = (float) Math.abs(Math.sin((double)(System.currentTimeMillis())/500d));
 			g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, hintAlpha));
-			for(int i = 0; i < board[0].length; i++) {
-				for(int j = 0; j < board.length; j++) {
-					Card card = board[i][j];
-					if(card == null) continue;
-					
-					if(card.hasHint()) {
-						YokaiType[] yokaiTypes = YokaiType.getYokaiFromHint(card.getHint());
-						BufferedImage texture = Textures.getTexture("hints/" + YokaiType.getYokaisString(yokaiTypes));
-						g.drawImage(texture, j*(DEFAULT_CARD_SIZE + CARD_MARGIN),
-								i*(DEFAULT_CARD_SIZE + CARD_MARGIN),
-								DEFAULT_CARD_SIZE, DEFAULT_CARD_SIZE, null);
-					}
-					
+			for(int c = 0; c < storage.getCardCount(); c++) {
+				Card card = storage.getCard(c);
+				int i = storage.getCardY(c), j = storage.getCardX(c);
 				
+				if(card.hasHint()) {
+					BufferedImage texture = Textures.getHintTexture(card.getHint());
+					g.drawImage(texture, j*(DEFAULT_CARD_SIZE + CARD_MARGIN),
+							i*(DEFAULT_CARD_SIZE + CARD_MARGIN),
+							DEFAULT_CARD_SIZE, DEFAULT_CARD_SIZE, null);
 				}
+				
+			
 			}
 			g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 1f));
 		}
@@ -119,6 +121,11 @@ public class CardsLayer extends UILayer {
 			int dragCardSizeDelta = 7;
 			int shadowOffset = 5;
 			
+			g.setColor(LEGAL_DESTINATION_COLOR);
+			for(int i = 0; i < storage.getLegalDestinationCount(); i++) {
+				g.fillRect(storage.getLegalDestinationX(i)*(DEFAULT_CARD_SIZE + CARD_MARGIN), storage.getLegalDestinationY(i)*(DEFAULT_CARD_SIZE + CARD_MARGIN), DEFAULT_CARD_SIZE, DEFAULT_CARD_SIZE);
+			}
+			
 			int hoverAlpha = (int)(28+100d*Math.abs(Math.sin((double)(System.currentTimeMillis())/500d)));
 			Color hoverColor = new Color(255,255,255,hoverAlpha);
 			if(!storage.isCorrectPlacement(controller.getHoverCardX(), controller.getHoverCardY())) {
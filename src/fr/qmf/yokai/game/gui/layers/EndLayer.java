@@ -7,6 +7,7 @@ import java.awt.Graphics2D;
 
 import fr.qmf.yokai.Tickable;
 import fr.qmf.yokai.YokaiGame;
+import fr.qmf.yokai.game.Ending;
 import fr.qmf.yokai.game.GameStorage;
 import fr.qmf.yokai.game.gui.components.buttons.GameButton;
 import fr.qmf.yokai.io.audio.Sound;
@@ -96,16 +97,8 @@ public class EndLayer extends UILayer implements Tickable {
 		 */
 		if(visibleCooldown > 1*20) {
 			if(visibleCooldown == (int)(1*20+GameStorage.BOARD_LENGTH*GameStorage.BOARD_LENGTH/game.getTargetFPS()*2*20)) {
-				String text = "Défaite";
 				int score = game.getGameStorage().getScore();
-				if(score >= 0 && score <= 7) {
-					text = "Victoire Honorable";
-				} else if(score >= 8 && score <= 11) {
-					text = "Victoire Glorieuse";
-				} else if(score >= 12){
-					text = "Victoire Totale";
-				}
-				endingText.setText(text);
+				endingText.setText(Ending.of(score).getDescription());
 
 				if(score >= 0) {
 					scoreText.setText("Score: " + score);
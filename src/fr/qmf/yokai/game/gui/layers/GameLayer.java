@@ -8,7 +8,6 @@ import java.awt.image.BufferedImage;
 
 import fr.qmf.yokai.Tickable;
 import fr.qmf.yokai.YokaiGame;
-import fr.qmf.yokai.game.Card;
 import fr.qmf.yokai.game.GameController;
 import fr.qmf.yokai.game.GameStage;
 import fr.qmf.yokai.game.GameStorage;
@@ -96,9 +95,8 @@ public class GameLayer extends UILayer implements Tickable, Dragable, MouseWheel
 		view.translate(-controller.getScrollX(), -controller.getScrollY());
 		view.scale(controller.getZoom(), controller.getZoom());
 		
-		Card[][] board = game.getGameStorage().getBoard();
-		double xCenter = (window.getWidth() - board[0].length*(CardsLayer.DEFAULT_CARD_SIZE + CardsLayer.CARD_MARGIN))/2;
-		double yCenter = (window.getHeight() - board.length*(CardsLayer.DEFAULT_CARD_SIZE + CardsLayer.CARD_MARGIN))/2;
+		double xCenter = (window.getWidth() - GameStorage.BOARD_LENGTH*(CardsLayer.DEFAULT_CARD_SIZE + CardsLayer.CARD_MARGIN))/2;
+		double yCenter = (window.getHeight() - GameStorage.BOARD_LENGTH*(CardsLayer.DEFAULT_CARD_SIZE + CardsLayer.CARD_MARGIN))/2;
 		
 		view.translate(xCenter, yCenter);
 		
@@ -152,23 +150,25 @@ public class GameLayer extends UILayer implements Tickable, Dragable, MouseWheel
 		
 		yokaiPleasedButton.setX( (window.getWidth() - 300)/2);
 		yokaiPleasedButton.setY(window.getHeight() - 50 - 50);
-		yokaiPleasedButton.setVisible(game.getGameStorage().getCurrentStage().equals(GameStage.PLAY_OR_GUESS));
+		yokaiPleasedButton.setVisible(game.getGameStorage().getCurrentStage().equals(GameStage.PLAY_OR_GUESS) && !controller.isObserving() && !controller.isBotTurn());
 		
 		pauseLayer.setVisible(game.isPaused());
 		pauseLayer.tick();
 		
+		controller.playMouse();
+		controller.playBot();
+		
 		if(game.getGameStorage().getCurrentStage().equals(GameStage.END)) {
 			endLayer.tick();
 		}
 		
 		gameStageText.setX(window.getWidth()/2);
-		gameStageText.setText(game.getGameStorage().getCurrentStage().getDescription());
+		gameStageText.setText((controller.isObserving() ? GameStage.OBSERVING : game.getGameStorage().getCurrentStage()).getDescription());
 		
 		if(controller.isDraggingCard() || controller.isDraggingHint()) {
 			int speed = 10;
-			Card[][] board = game.getGameStorage().getBoard();
-			double xCenter = (window.getWidth() - board[0].length*(CardsLayer.DEFAULT_CARD_SIZE + CardsLayer.CARD_MARGIN))/2;
-			double yCenter = (window.getHeight() - board.length*(CardsLayer.DEFAULT_CARD_SIZE + CardsLayer.CARD_MARGIN))/2;
+			double xCenter = (window.getWidth() - GameStorage.BOARD_LENGTH*(CardsLayer.DEFAULT_CARD_SIZE + CardsLayer.CARD_MARGIN))/2;
+			double yCenter = (window.getHeight() - GameStorage.BOARD_LENGTH*(CardsLayer.DEFAULT_CARD_SIZE + CardsLayer.CARD_MARGIN))/2;
 			int dx = 0, dy = 0;
 			if(window.getMouseX() <= controller.getZoom()*(CardsLayer.DEFAULT_CARD_SIZE + CardsLayer.CARD_MARGIN)) {
 				dx = speed;
@@ -215,9 +215,8 @@ public class GameLayer extends UILayer implements Tickable, Dragable, MouseWheel
 		if(game.isPaused()) return true;
 
 		GameStorage storage = game.getGameStorage();
-		Card[][] board = storage.getBoard();
-		double xCenter = (window.getWidth() - board[0].length*(CardsLayer.DEFAULT_CARD_SIZE + CardsLayer.CARD_MARGIN))/2;
-		double yCenter = (window.getHeight() - board.length*(CardsLayer.DEFAULT_CARD_SIZE + CardsLayer.CARD_MARGIN))/2;
+		double xCenter = (window.getWidth() - GameStorage.BOARD_LENGTH*(CardsLayer.DEFAULT_CARD_SIZE + CardsLayer.CARD_MARGIN))/2;
+		double yCenter = (window.getHeight() - GameStorage.BOARD_LENGTH*(CardsLayer.DEFAULT_CARD_SIZE + CardsLayer.CARD_MARGIN))/2;
 		
 		if(game.getGameStorage().getCurrentStage().equals(GameStage.MOVING)) {
 			double xCardDisplayed = (x/controller.getZoom() - controller.getPanX()/controller.getZoom() + controller.getScrollX()/controller.getZoom() -xCenter);
@@ -248,9 +247,8 @@ public class GameLayer extends UILayer implements Tickable, Dragable, MouseWheel
 	public void stopDragging(int stopDragX, int stopDragY) {
 		
 		GameStorage storage = game.getGameStorage();
-		Card[][] board = storage.getBoard();
-		double xCenter = (window.getWidth() - board[0].length*(CardsLayer.DEFAULT_CARD_SIZE + CardsLayer.CARD_MARGIN))/2;
-		double yCenter = (window.getHeight() - board.length*(CardsLayer.DEFAULT_CARD_SIZE + CardsLayer.CARD_MARGIN))/2;
+		double xCenter = (window.getWidth() - GameStorage.BOARD_LENGTH*(CardsLayer.DEFAULT_CARD_SIZE + CardsLayer.CARD_MARGIN))/2;
+		double yCenter = (window.getHeight() - GameStorage.BOARD_LENGTH*(CardsLayer.DEFAULT_CARD_SIZE + CardsLayer.CARD_MARGIN))/2;
 		
 		double xCardDisplayed = (stopDragX/controller.getZoom() - controller.getPanX()/controller.getZoom() + controller.getScrollX()/controller.getZoom() -xCenter);
 		double yCardDisplayed = (stopDragY/controller.getZoom() - controller.getPanY()/controller.getZoom() + controller.getScrollY()/controller.getZoom() -yCenter);
@@ -261,9 +259,8 @@ public class GameLayer extends UILayer implements Tickable, Dragable, MouseWheel
 	@Override
 	public boolean click(int screenX, int screenY, int x, int y, int clickCount) {
 		GameStorage storage = game.getGameStorage();
-		Card[][] board = storage.getBoard();
-		double xCenter = (window.getWidth() - board[0].length*(CardsLayer.DEFAULT_CARD_SIZE + CardsLayer.CARD_MARGIN))/2;
-		double yCenter = (window.getHeight() - board.length*(CardsLayer.DEFAULT_CARD_SIZE + CardsLayer.CARD_MARGIN))/2;
+		double xCenter = (window.getWidth() - GameStorage.BOARD_LENGTH*(CardsLayer.DEFAULT_CARD_SIZE + CardsLayer.CARD_MARGIN))/2;
+		double yCenter = (window.getHeight() - GameStorage.BOARD_LENGTH*(CardsLayer.DEFAULT_CARD_SIZE + CardsLayer.CARD_MARGIN))/2;
 		
 		double xCardDisplayed = (x/controller.getZoom() - controller.getPanX()/controller.getZoom() + controller.getScrollX()/controller.getZoom() -xCenter);
 		double yCardDisplayed = (y/controller.getZoom() - controller.getPanY()/controller.getZoom() + controller.getScrollY()/controller.getZoom() -yCenter);
@@ -299,4 +296,8 @@ public class GameLayer extends UILayer implements Tickable, Dragable, MouseWheel
 		controller.setPanY(dy+controller.getPanY());
 	}
 	
+	public GameController getController() {
+		return controller;
+	}
+	
 }
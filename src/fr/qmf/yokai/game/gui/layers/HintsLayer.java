@@ -7,9 +7,9 @@ import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 
 import fr.qmf.yokai.YokaiGame;
+import fr.qmf.yokai.game.Card;
 import fr.qmf.yokai.game.GameController;
 import fr.qmf.yokai.game.GameStorage;
-import fr.qmf.yokai.game.YokaiType;
 import fr.qmf.yokai.io.Textures;
 import fr.qmf.yokai.ui.UILayer;
 import fr.qmf.yokai.ui.Window;
@@ -54,14 +54,13 @@ public class HintsLayer extends UILayer {
 		}
 		
 		for(int i = 0; i < storage.getDiscoveredHints().size(); i++) {
-			byte hint = storage.getDiscoveredHints().get(i).byteValue();
+			long hint = storage.getDiscoveredHints().get(i);
 			
 			if(controller.isDraggingHint() && hint == controller.getHintDragged()) {
 				g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.5f));
 			}
 			
-			YokaiType[] yokaiTypes = YokaiType.getYokaiFromHint(hint);
-			BufferedImage texture = Textures.getTexture("hints/" + YokaiType.getYokaisString(yokaiTypes));
+			BufferedImage texture = Textures.getHintTexture(hint);
 			
 			double x = (controller.getMaxCardX()+HINT_DECK_X_OFFSET+i%HINT_ROWS)*(DEFAULT_HINT_SIZE + HINT_MARGIN);
 			double y = (controller.getMinCardY()+HINT_DECK_Y_OFFSET+i/HINT_ROWS)*(DEFAULT_HINT_SIZE + HINT_MARGIN);
@@ -105,14 +104,15 @@ public class HintsLayer extends UILayer {
 		}
 		
 		if(controller.isDraggingHint()) {
-			BufferedImage texture = Textures.getTexture("hints/" + YokaiType.getYokaisString(YokaiType.getYokaiFromHint(controller.getHintDragged())));
+			BufferedImage texture = Textures.getHintTexture(controller.getHintDragged());
 			
 			int dragCardSizeDelta = 7;
 			int shadowOffset = 5;
 			
 			int hoverAlpha = (int)(28+100d*Math.abs(Math.sin((double)(System.currentTimeMillis())/500d)));
 			Color hoverColor = new Color(255,255,255,hoverAlpha);
-			if(!storage.isInsideBoard(controller.getHoverCardX(), controller.getHoverCardY()) || storage.getBoard()[controller.getHoverCardY()][controller.getHoverCardX()] == null || storage.getBoard()[controller.getHoverCardY()][controller.getHoverCardX()].hasHint()) {
+			Card hoveredCard = storage.getCard(controller.getHoverCardX(), controller.getHoverCardY());
+			if(hoveredCard == null || hoveredCard.hasHint()) {
 				hoverColor = new Color(255,45,45,hoverAlpha);
 			}
 			
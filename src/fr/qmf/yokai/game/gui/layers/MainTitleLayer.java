@@ -7,13 +7,15 @@ import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Random;
+import java.util.SplittableRandom;
 
 import fr.qmf.yokai.Tickable;
 import fr.qmf.yokai.YokaiGame;
 import fr.qmf.yokai.game.Card;
 import fr.qmf.yokai.game.GameController;
 import fr.qmf.yokai.game.GameStorage;
+import fr.qmf.yokai.game.Variant;
+import fr.qmf.yokai.game.bot.IsmctsBot;
 import fr.qmf.yokai.game.YokaiType;
 import fr.qmf.yokai.game.gui.components.buttons.GameButton;
 import fr.qmf.yokai.io.Textures;
@@ -30,6 +32,13 @@ import fr.qmf.yokai.ui.components.TextComponent;
  */
 public class MainTitleLayer extends UILayer implements Tickable  {
 
+	private static final int SOLO_BOT_SEAT = 1; // The bot plays second in solo games.
+	private static final long SOLO_BOT_TIME_BUDGET = 1500; // Milliseconds the bot thinks each action for.
+	
+	// Games the buttons may ask for.
+	private static final int TWO_PLAYERS = 1;
+	private static final int SOLO = 2;
+
 	private YokaiGame game;
 	private ImageComponent yokaiTitle;
 	private BufferedImage background;
@@ -37,8 +46,11 @@ public class MainTitleLayer extends UILayer implements Tickable  {
 	
 	private TextComponent creditsText;
 	
-	private Random random = new Random();
+	private SplittableRandom random; // Split from the random of the game at the first tick, as the game loop is the one using it.
+	private volatile int launchRequest; // Game asked for by the buttons on the window thread, set up at the next tick.
 	private GameButton launchGame;
+	private GameButton launchSoloGame;
+	private GameButton resumeGame;
 	private GameButton quitGame;
 
 	public MainTitleLayer(YokaiGame game, Window window) {
@@ -46,8 +58,6 @@ public class MainTitleLayer extends UILayer implements Tickable  {
 		this.game = game;
 		background = Textures.getTexture("backgrounds/game_repeat");
 		
-		initFakeBoard();
-		
 		BufferedImage yokaiTexture = Textures.getTexture("gui/yokai");
 		this.yokaiTitle = new ImageComponent(this, yokaiTexture, (window.getWidth() - yokaiTexture.getWidth())/2, 50);
 		add(yokaiTitle);
@@ -61,17 +71,36 @@ public class MainTitleLayer extends UILayer implements Tickable  {
 			@Override
 			public boolean click(int screenX, int screenY, int x, int y, int clickCount) {
 				super.click(screenX, screenY, x, y, clickCount);
-				GameStorage gameStorage = new GameStorage();
-				
-				gameStorage.init();
-				game.setGameStorage(gameStorage);
-				
-				window.setCurrentLayer(new GameLayer(game, new GameController(game), window));
+				launchRequest = TWO_PLAYERS;
 				return false;
 			}
 		};
 		add(10, launchGame);
 		
+		launchSoloGame = new GameButton(window, this, new Font("Arial", Font.PLAIN, 18), "Jouer seul", Color.WHITE, (window.getWidth()-300)/2, (window.getHeight()-60-30)/2-90, 300, 60) {
+			
+			@Override
+			public boolean click(int screenX, int screenY, int x, int y, int clickCount) {
+				super.click(screenX, screenY, x, y, clickCount);
+				launchRequest = SOLO;
+				return false;
+			}
+		};
+		add(10, launchSoloGame);
+		
+		// The journal of the last game is replaced once a new game starts, so it may only be resumed from here.
+		resumeGame = new GameButton(window, this, new Font("Arial", Font.PLAIN, 18), "Reprendre la partie", Color.WHITE, (window.getWidth()-300)/2, (window.getHeight()-60-30)/2-180, 300, 60) {
+			
+			@Override
+			public boolean click(int screenX, int screenY, int x, int y, int clickCount) {
+				super.click(screenX, screenY, x, y, clickCount);
+				game.requestRecover();
+				return false;
+			}
+		};
+		resumeGame.setVisible(game.getJournal().exists());
+		add(10, resumeGame);
+		
 		quitGame = new GameButton(window, this, new Font("Arial", Font.PLAIN, 18), "Quitter le jeu", Color.WHITE, (window.getWidth()-300)/2, (window.getHeight()+60+30)/2, 300, 60) {
 			
 			@Override
@@ -101,6 +130,8 @@ public class MainTitleLayer extends UILayer implements Tickable  {
 			}
 		}
 		
+		if(board == null) return; // Dealt at the first tick.
+		
 		double xCenter = (window.getWidth() - board[0].length*(CardsLayer.DEFAULT_CARD_SIZE + CardsLayer.CARD_MARGIN))/2;
 		double yCenter = (window.getHeight() - board.length*(CardsLayer.DEFAULT_CARD_SIZE + CardsLayer.CARD_MARGIN))/2;
 		
@@ -113,10 +144,9 @@ public class MainTitleLayer extends UILayer implements Tickable  {
 				
 				BufferedImage texture = Textures.getTexture("cards/back");
 				if(card.isShown()) {
-					texture = Textures.getTexture("cards/" + card.getType().getColor());
+					texture = Textures.getCardTexture(card.getType());
 				} else if(card.hasHint()) {
-					YokaiType[] yokaiTypes = YokaiType.getYokaiFromHint(card.getHint());
-					texture = Textures.getTexture("hints/" + YokaiType.getYokaisString(yokaiTypes));
+					texture = Textures.getHintTexture(card.getHint());
 				}
 				
 				double animationTime = 0;
@@ -129,7 +159,7 @@ public class MainTitleLayer extends UILayer implements Tickable  {
 						if(card.isShown()) {
 							texture = Textures.getTexture("cards/back");
 						} else {
-							texture = Textures.getTexture("cards/" + card.getType().getColor());
+							texture = Textures.getCardTexture(card.getType());
 						}
 					}
 					if(animationTime >= Card.ANIMATION_DURATION) {
@@ -149,20 +179,54 @@ public class MainTitleLayer extends UILayer implements Tickable  {
 
 	@Override
 	public void tick() {
+		if(board == null) {
+			random = game.getRandom().split();
+			initFakeBoard();
+		}
+		if(launchRequest != 0) {
+			launch(launchRequest == SOLO);
+			return;
+		}
+		
 		this.yokaiTitle.setX((window.getWidth() - yokaiTitle.getWidth())/2);
 		
 		this.creditsText.setY(window.getHeight()-120);
 		
+		this.launchSoloGame.setX((window.getWidth()-300)/2);
 		this.launchGame.setX((window.getWidth()-300)/2);
 		this.quitGame.setX((window.getWidth()-300)/2);
+		this.resumeGame.setX((window.getWidth()-300)/2);
+		this.launchSoloGame.setY((window.getHeight()-60-30)/2-90);
 		this.launchGame.setY((window.getHeight()-60-30)/2);
 		this.quitGame.setY((window.getHeight()+60+30)/2);
+		this.resumeGame.setY((window.getHeight()-60-30)/2-180);
 		
 		if(random.nextInt(300) <= 4) {
 			board[random.nextInt(4)][random.nextInt(4)].flip();
 		}
 	}
 	
+	/**
+	 * Sets up a new game and shows it, on the game loop which owns the random of the game.
+	 * @param solo true for a game against the bot.
+	 */
+	private void launch(boolean solo) {
+		launchRequest = 0;
+		GameStorage gameStorage = new GameStorage();
+		
+		gameStorage.init(Variant.CLASSIC, game.getRandom().nextLong());
+		if(solo) {
+			gameStorage.getPlayer(SOLO_BOT_SEAT).setName("Ordinateur");
+		}
+		game.setGameStorage(gameStorage);
+		
+		GameController controller = new GameController(game);
+		if(solo) {
+			controller.setBot(new IsmctsBot(gameStorage, SOLO_BOT_SEAT, Runtime.getRuntime().availableProcessors(), SOLO_BOT_TIME_BUDGET, game.getRandom().split()));
+		}
+		window.setCurrentLayer(new GameLayer(game, controller, window));
+	}
+	
 	/**
 	 * Initializes the fake board to be drawn on the background.
 	 */
@@ -175,7 +239,9 @@ public class MainTitleLayer extends UILayer implements Tickable  {
 		}
 
 		// Randomizes its placement
-		Collections.shuffle(types);
+		for(int i = types.size() - 1; i > 0; i--) {
+			Collections.swap(types, i, random.nextInt(i + 1));
+		}
 		
 		for (int i = 0; i < 4; i++) {
 			for (int j = 0; j < 4; j++) {
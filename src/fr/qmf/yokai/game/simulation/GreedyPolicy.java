@@ -0,0 +1,83 @@
+package fr.qmf.yokai.game.simulation;
+
+import java.util.SplittableRandom;
+
+import fr.qmf.yokai.game.Action;
+import fr.qmf.yokai.game.GameStage;
+import fr.qmf.yokai.game.GameStorage;
+
+/**
+ * Plays the move leaving the families in the fewest groups, seeing every card as the simulations do,
+ * and spends the hints for as few points as it can: it puts a discovered hint on a card it shows,
+ * draws one otherwise, and declares peace as soon as the Yokai are pleased.
+ * Ties and the other choices are random, so the games spread over every ending, unlike with a {@link RandomPolicy}.
+ * @author LeFlo
+ *
+ */
+public class GreedyPolicy implements Policy {
+
+	private GameStorage scratch; // Plays the moves tried, restored from the game before each one.
+
+	@Override
+	public long chooseAction(GameStorage storage, long[] actions, int count, SplittableRandom random) {
+		switch(storage.getCurrentStage()) {
+		case PLAY_OR_GUESS:
+			// Peace may only be declared instead of observing, and is then listed last.
+			if(storage.previewScore() != -1 || count == 1) {
+				return Action.declarePeace();
+			}
+			return actions[random.nextInt(count - 1)];
+		case MOVING:
+			return chooseMove(storage, actions, count, random);
+		case HINT:
+			return chooseHint(storage, actions, count, random);
+		default:
+			return actions[random.nextInt(count)];
+		}
+	}
+
+	private long chooseMove(GameStorage storage, long[] actions, int count, SplittableRandom random) {
+		if(scratch == null) {
+			scratch = storage.fork();
+		}
+		long best = actions[0];
+		int bestGroups = Integer.MAX_VALUE, ties = 0;
+		for(int i = 0; i < count; i++) {
+			long action = actions[i];
+			int fromX = Action.getArgument(action, 0), fromY = Action.getArgument(action, 1);
+			scratch.restore(storage);
+			scratch.setCardMoving(fromX, fromY, true);
+			scratch.moveCard(fromX, fromY, Action.getArgument(action, 2), Action.getArgument(action, 3));
+			int groups = scratch.getFamilyGroupCount();
+			if(groups < bestGroups) {
+				bestGroups = groups;
+				best = action;
+				ties = 1;
+			} else if(groups == bestGroups && random.nextInt(++ties) == 0) {
+				// Reservoir sampling, to pick one of the best moves at random.
+				best = action;
+			}
+		}
+		return best;
+	}
+
+	private long chooseHint(GameStorage storage, long[] actions, int count, SplittableRandom random) {
+		long chosen = 0;
+		int candidates = 0;
+		for(int i = 0; i < count; i++) {
+			long action = actions[i];
+			if(Action.getType(action) != Action.PLACE_HINT) continue;
+			long hint = storage.getDiscoveredHints().get(Action.getArgument(action, 0));
+			int family = storage.getCard(Action.getArgument(action, 1), Action.getArgument(action, 2)).getFamily();
+			if((hint & (1L << family)) != 0 && random.nextInt(++candidates) == 0) {
+				chosen = action;
+			}
+		}
+		if(candidates > 0) return chosen;
+
+		// Drawing is listed first, when there is a hint left to draw.
+		if(Action.getType(actions[0]) == Action.DRAW_HINT) return actions[0];
+		return actions[random.nextInt(count)];
+	}
+
+}
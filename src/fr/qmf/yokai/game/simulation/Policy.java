@@ -0,0 +1,25 @@
+package fr.qmf.yokai.game.simulation;
+
+import java.util.SplittableRandom;
+
+import fr.qmf.yokai.game.GameStorage;
+
+/**
+ * Chooses the actions of the players in simulated games.
+ * A policy is only used by one thread at a time, so it may keep buffers of its own.
+ * @author LeFlo
+ *
+ */
+public interface Policy {
+
+	/**
+	 * Chooses an action among the legal ones.
+	 * @param storage the game, which must not be changed.
+	 * @param actions the legal actions, see {@link fr.qmf.yokai.game.Action}.
+	 * @param count the number of legal actions, at least 1.
+	 * @param random the random to use, so that simulations may be replayed.
+	 * @return one of the legal actions.
+	 */
+	public long chooseAction(GameStorage storage, long[] actions, int count, SplittableRandom random);
+
+}
@@ -0,0 +1,29 @@
+package fr.qmf.yokai.game.simulation;
+
+import java.util.SplittableRandom;
+
+import fr.qmf.yokai.game.Action;
+import fr.qmf.yokai.game.GameStage;
+import fr.qmf.yokai.game.GameStorage;
+
+/**
+ * Plays random actions, but only declares peace once the Yokai are pleased
+ * or when there is nothing else to do.
+ * @author LeFlo
+ *
+ */
+public class RandomPolicy implements Policy {
+
+	@Override
+	public long chooseAction(GameStorage storage, long[] actions, int count, SplittableRandom random) {
+		// Peace may only be declared instead of observing, and is then listed last.
+		if(storage.getCurrentStage() != GameStage.PLAY_OR_GUESS) {
+			return actions[random.nextInt(count)];
+		}
+		if(storage.previewScore() != -1 || count == 1) {
+			return Action.declarePeace();
+		}
+		return actions[random.nextInt(count - 1)];
+	}
+
+}
@@ -0,0 +1,139 @@
+package fr.qmf.yokai.game.simulation;
+
+import java.util.Arrays;
+
+import fr.qmf.yokai.game.Ending;
+
+/**
+ * The scores of simulated games, as {@link fr.qmf.yokai.game.GameStorage#calculateScore()} gives them,
+ * and how long they took to play.
+ * @author LeFlo
+ *
+ */
+public class SimulationResult {
+
+	private int threads;
+	private long games;
+	private long actions;
+	private long nanos;
+	private long[] scoreCounts = new long[0]; // Number of games for each score + 1, so that defeats come first.
+
+	/**
+	 * @param threads the number of threads the games were played on.
+	 */
+	public SimulationResult(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * Counts a game.
+	 * @param score the score of the game, -1 for a defeat.
+	 * @param actions the number of actions played in the game.
+	 */
+	public void addGame(int score, int actions) {
+		if(score + 1 >= scoreCounts.length) {
+			scoreCounts = Arrays.copyOf(scoreCounts, score + 2);
+		}
+		scoreCounts[score + 1]++;
+		games++;
+		this.actions += actions;
+	}
+
+	/**
+	 * Counts the games of another result.
+	 * @param other
+	 */
+	public void addAll(SimulationResult other) {
+		if(other.scoreCounts.length > scoreCounts.length) {
+			scoreCounts = Arrays.copyOf(scoreCounts, other.scoreCounts.length);
+		}
+		for(int i = 0; i < other.scoreCounts.length; i++) {
+			scoreCounts[i] += other.scoreCounts[i];
+		}
+		games += other.games;
+		actions += other.actions;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public long getGames() {
+		return games;
+	}
+
+	public long getActions() {
+		return actions;
+	}
+
+	public long getNanos() {
+		return nanos;
+	}
+
+	public void setNanos(long nanos) {
+		this.nanos = nanos;
+	}
+
+	public double getGamesPerSecond() {
+		return nanos == 0 ? 0 : games * 1e9 / nanos;
+	}
+
+	/**
+	 * @return the highest score of the games, -1 if every game was lost.
+	 */
+	public int getMaxScore() {
+		return scoreCounts.length - 2;
+	}
+
+	/**
+	 * @param score
+	 * @return the number of games with this score.
+	 */
+	public long getScoreCount(int score) {
+		return score + 1 >= 0 && score + 1 < scoreCounts.length ? scoreCounts[score + 1] : 0;
+	}
+
+	/**
+	 * @param ending
+	 * @return the number of games which ended this way.
+	 */
+	public long getEndingCount(Ending ending) {
+		long count = 0;
+		for(int score = -1; score <= getMaxScore(); score++) {
+			if(Ending.of(score) == ending) {
+				count += getScoreCount(score);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return the mean score of the won games, or 0 if none was won.
+	 */
+	public double getMeanWonScore() {
+		long won = 0, sum = 0;
+		for(int score = 0; score <= getMaxScore(); score++) {
+			won += getScoreCount(score);
+			sum += score * getScoreCount(score);
+		}
+		return won == 0 ? 0 : (double) sum / won;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append(String.format("%d games on %d threads in %.2fs: %.0f games/s, %.1f actions/game%n",
+				games, threads, nanos / 1e9, getGamesPerSecond(), games == 0 ? 0 : (double) actions / games));
+		for(Ending ending : Ending.values()) {
+			builder.append(String.format("  %-20s %6.2f%%%n", ending.getDescription(), games == 0 ? 0 : 100d * getEndingCount(ending) / games));
+		}
+		builder.append(String.format("  Mean won score: %.2f%n", getMeanWonScore()));
+		for(int score = 0; score <= getMaxScore(); score++) {
+			if(getScoreCount(score) > 0) {
+				builder.append(String.format("  Score %3d: %d%n", score, getScoreCount(score)));
+			}
+		}
+		return builder.toString();
+	}
+
+}
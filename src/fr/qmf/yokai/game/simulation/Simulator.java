@@ -0,0 +1,129 @@
+package fr.qmf.yokai.game.simulation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import fr.qmf.yokai.game.ActionGenerator;
+import fr.qmf.yokai.game.GameEngine;
+import fr.qmf.yokai.game.GameStage;
+import fr.qmf.yokai.game.GameStorage;
+import fr.qmf.yokai.game.Variant;
+
+/**
+ * Plays whole games with {@link Policy}s on every core, without any window, to balance variants
+ * and check that rule changes do not change the scores.
+ * Each thread plays its share of the games with a policy, buffers and a random stream of its own,
+ * and each game is dealt from a seed of its own so that any of them may be replayed.
+ * @author LeFlo
+ *
+ */
+public class Simulator {
+
+	private Variant variant;
+	private Supplier<? extends Policy> policies;
+
+	/**
+	 * @param variant the variant of the games.
+	 * @param policies makes the policy of each thread.
+	 */
+	public Simulator(Variant variant, Supplier<? extends Policy> policies) {
+		this.variant = variant;
+		this.policies = policies;
+	}
+
+	/**
+	 * Plays games on a pool of threads.
+	 * @param games the number of games to play.
+	 * @param threads the number of threads to play on.
+	 * @param seed the seed every random choice comes from: the same seed and number of threads play the same games.
+	 * @return the scores of the games.
+	 */
+	public SimulationResult run(long games, int threads, long seed) {
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			long start = System.nanoTime();
+			SplittableRandom root = new SplittableRandom(seed);
+			List<Future<SimulationResult>> tasks = new ArrayList<>();
+			for(int t = 0; t < threads; t++) {
+				long share = games / threads + (t < games % threads ? 1 : 0);
+				SplittableRandom random = root.split();
+				tasks.add(pool.submit(() -> play(share, random)));
+			}
+			
+			SimulationResult result = new SimulationResult(threads);
+			for(Future<SimulationResult> task : tasks) {
+				result.addAll(task.get());
+			}
+			result.setNanos(System.nanoTime() - start);
+			return result;
+		} catch (InterruptedException | ExecutionException e) {
+			throw new IllegalStateException("The simulation failed", e);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Plays games on the current thread.
+	 */
+	private SimulationResult play(long games, SplittableRandom random) {
+		SimulationResult result = new SimulationResult(1);
+		Policy policy = policies.get();
+		long[] actions = new long[256];
+		
+		for(long g = 0; g < games; g++) {
+			long seed = random.nextLong();
+			GameStorage storage = new GameStorage();
+			storage.init(variant, seed);
+			// The players choose from another stream of the same seed, so the seed replays the whole game.
+			SplittableRandom gameRandom = new SplittableRandom(seed).split();
+			GameEngine engine = new GameEngine(storage);
+			ActionGenerator generator = new ActionGenerator(storage);
+			
+			int played = 0;
+			while(storage.getCurrentStage() != GameStage.END) {
+				int count = generator.generate(actions);
+				if(count > actions.length) {
+					actions = new long[Integer.highestOneBit(count) * 2];
+					count = generator.generate(actions);
+				}
+				engine.apply(policy.chooseAction(storage, actions, count, gameRandom));
+				played++;
+			}
+			result.addGame(storage.getScore(), played);
+		}
+		return result;
+	}
+
+	/**
+	 * Plays games with 1, 2, 4... threads up to the number of cores and prints how the throughput scales.
+	 * @param args the number of games, 10000 by default, the number of families, 4 by default,
+	 * and the policy, random by default or greedy, see {@link GreedyPolicy}.
+	 */
+	public static void main(String[] args) {
+		long games = args.length > 0 ? Long.parseLong(args[0]) : 10000;
+		int families = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		boolean greedy = args.length > 2 && args[2].equals("greedy");
+		Variant variant = families == 4 ? Variant.CLASSIC : Variant.square(families);
+		Simulator simulator = new Simulator(variant, greedy ? GreedyPolicy::new : RandomPolicy::new);
+		
+		// Warms up the JIT first.
+		simulator.run(Math.max(games / 10, 1), 1, 0);
+		
+		double single = 0;
+		int cores = Runtime.getRuntime().availableProcessors();
+		for(int threads = 1; ; threads = Math.min(threads * 2, cores)) {
+			SimulationResult result = simulator.run(games, threads, 0);
+			if(threads == 1) single = result.getGamesPerSecond();
+			System.out.print(result);
+			System.out.printf("  Speedup: x%.2f%n%n", result.getGamesPerSecond() / single);
+			if(threads == cores) break;
+		}
+	}
+
+}
@@ -0,0 +1,486 @@
+package fr.qmf.yokai.game.solver;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import fr.qmf.yokai.game.Action;
+import fr.qmf.yokai.game.GameStorage;
+import fr.qmf.yokai.game.Variant;
+
+/**
+ * Finds the fewest moves reuniting every family of a fully known board, e.g. to analyse a game or rate how hard a deal is.
+ * A move takes a card without hint to a cell where every card stays connected, as {@link GameStorage#isCorrectPlacement(int, int)} allows.
+ *
+ * The search is an IDA*: depth-first searches bounded by the moves played plus a lower bound of the moves left,
+ * the bound growing until a solution fits. A move only changes the groups of the family of the card moved,
+ * and merges at most 5 of them into 1, so each family with c groups needs at least ceil((c-1)/4) moves.
+ * The board is a grid of card indexes played and unplayed in place, and boards already searched with as few moves
+ * are skipped thanks to a transposition table keyed by the board up to translation, cards of a family being interchangeable.
+ * Its memory grows with the square of the number of cards: it is meant for decks of a few dozen cards.
+ * @author LeFlo
+ *
+ */
+public class MoveSolver {
+
+	public static final int DEFAULT_TABLE_CAPACITY = 1 << 20;
+	private static final int PROBES = 8; // Slots tried in the transposition table before replacing one.
+	private static final int FOUND = -1;
+
+	private static final int[] DIRECTION_X = {1, -1, 0, 0};
+	private static final int[] DIRECTION_Y = {0, 0, 1, -1};
+
+	private final GameStorage storage;
+	private final int cardCount;
+	private final int familyCount;
+	private final int[] families;
+	private final int[] classes; // Cards of the same class are interchangeable: same family, both with or without hint.
+	private final boolean[] movable;
+	private final int[] startX, startY; // Logical coords of the cards in the storage.
+
+	// Board being searched: each card's cell and, for each cell, the index of its card + 1 or 0.
+	private int width;
+	private int[] grid;
+	private final int[] cells;
+
+	// Buffers of the move generation and of the heuristic.
+	private final int[] groups;
+	private final int[] queue;
+	private final int[] parents;
+	private final int[] groupsPerFamily;
+	private int[] cellStamps;
+	private int stamp;
+	private long[][] moves = new long[0][]; // Moves of each depth: card index and destination cell, packed.
+
+	// Transposition table: keys of the boards, the search it was filled in and the fewest moves the board was reached with.
+	private final int keyWords;
+	private final int codeBits;
+	private final int tableCapacity;
+	private final long[] tableKeys;
+	private final int[] tableSearches;
+	private final int[] tableMoves;
+	private int search;
+	private final long[] key;
+	private final long[] classCodes;
+
+	// Last solution found: the cells the cards started from, then the card moved and its destination for each move.
+	private final int[] solutionStart;
+	private int[] solutionCards = new int[0], solutionCells = new int[0];
+	private int solutionLength = -1;
+	private int solutionWidth;
+	private long nodes;
+
+	/**
+	 * @param storage the board to solve, whose families are all known. It is read once and never changed.
+	 */
+	public MoveSolver(GameStorage storage) {
+		this(storage, DEFAULT_TABLE_CAPACITY);
+	}
+
+	/**
+	 * @param storage the board to solve, whose families are all known. It is read once and never changed.
+	 * @param tableCapacity the number of boards the transposition table holds.
+	 */
+	public MoveSolver(GameStorage storage, int tableCapacity) {
+		this.storage = storage;
+		cardCount = storage.getCardCount();
+		familyCount = storage.getVariant().getFamilyCount();
+		families = new int[cardCount];
+		classes = new int[cardCount];
+		movable = new boolean[cardCount];
+		startX = new int[cardCount];
+		startY = new int[cardCount];
+		for(int i = 0; i < cardCount; i++) {
+			families[i] = storage.getCard(i).getFamily();
+			movable[i] = !storage.getCard(i).hasHint();
+			classes[i] = families[i] * 2 + (movable[i] ? 0 : 1);
+			startX[i] = storage.getCardX(i);
+			startY[i] = storage.getCardY(i);
+		}
+
+		cells = new int[cardCount];
+		solutionStart = new int[cardCount];
+		groups = new int[cardCount];
+		queue = new int[cardCount];
+		parents = new int[cardCount];
+		groupsPerFamily = new int[familyCount];
+
+		// A connected deck spans less than cardCount cells each way.
+		codeBits = Math.max(1, 32 - Integer.numberOfLeadingZeros(cardCount * cardCount - 1));
+		keyWords = (cardCount * codeBits + 63) / 64;
+		this.tableCapacity = Integer.highestOneBit(Math.max(tableCapacity, 1));
+		tableKeys = new long[this.tableCapacity * keyWords];
+		tableSearches = new int[this.tableCapacity];
+		tableMoves = new int[this.tableCapacity];
+		key = new long[keyWords];
+		classCodes = new long[cardCount];
+	}
+
+	/**
+	 * Searches the fewest moves reuniting every family.
+	 * @param maxMoves the most moves to search for.
+	 * @return the fewest moves, 0 if the families are already reunited, or -1 if it takes more than maxMoves.
+	 */
+	public int solve(int maxMoves) {
+		setUpBoard(maxMoves);
+		System.arraycopy(cells, 0, solutionStart, 0, cardCount);
+		solutionWidth = width;
+		nodes = 0;
+		solutionLength = -1;
+		if(solutionCards.length < maxMoves) {
+			solutionCards = new int[maxMoves];
+			solutionCells = new int[maxMoves];
+		}
+
+		int bound = heuristic();
+		while(bound <= maxMoves) {
+			search++;
+			int next = search(0, bound, -1);
+			if(next == FOUND) {
+				solutionLength = bound;
+				return bound;
+			}
+			bound = next;
+		}
+		return -1;
+	}
+
+	/**
+	 * Puts the cards on a grid wide enough for the deck to drift by maxMoves cells in any direction.
+	 */
+	private void setUpBoard(int maxMoves) {
+		int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+		for(int i = 0; i < cardCount; i++) {
+			minX = Math.min(minX, startX[i]);
+			minY = Math.min(minY, startY[i]);
+			maxX = Math.max(maxX, startX[i]);
+			maxY = Math.max(maxY, startY[i]);
+		}
+		int margin = maxMoves + 2;
+		width = Math.max(maxX - minX, maxY - minY) + 1 + 2*margin;
+		// The buffers are kept from a solve to the next, and only grown for more moves.
+		if(grid == null || grid.length < width * width) {
+			grid = new int[width * width];
+			cellStamps = new int[width * width];
+		} else {
+			Arrays.fill(grid, 0, width * width, 0);
+			Arrays.fill(cellStamps, 0, width * width, 0);
+		}
+		stamp = 0;
+		for(int i = 0; i < cardCount; i++) {
+			cells[i] = (startY[i] - minY + margin) * width + (startX[i] - minX + margin);
+			grid[cells[i]] = i + 1;
+		}
+
+		// Each card has 4 cells around it.
+		if(moves.length < maxMoves + 1) {
+			int depths = moves.length;
+			moves = Arrays.copyOf(moves, maxMoves + 1);
+			for(int depth = depths; depth < moves.length; depth++) {
+				moves[depth] = new long[cardCount * 4 * cardCount];
+			}
+		}
+	}
+
+	/**
+	 * Searches the moves left from the current board.
+	 * @param played the moves played to reach the board.
+	 * @param bound the most moves a solution may take in this search.
+	 * @param lastCard the card moved last, which is not moved again right away: moving it once to its last cell is as good.
+	 * @return {@link #FOUND}, or the smallest bound over the current one which the board needs.
+	 */
+	private int search(int played, int bound, int lastCard) {
+		nodes++;
+		int estimate = heuristic();
+		if(estimate == 0) {
+			return FOUND;
+		}
+		if(played + estimate > bound) {
+			return played + estimate;
+		}
+		if(!visit(played)) {
+			return Integer.MAX_VALUE;
+		}
+
+		int moveCount = generateMoves(moves[played], lastCard);
+		int next = Integer.MAX_VALUE;
+		for(int m = 0; m < moveCount; m++) {
+			int card = (int) (moves[played][m] >>> 32);
+			int to = (int) moves[played][m];
+			int from = cells[card];
+
+			move(card, to);
+			int result = search(played + 1, bound, card);
+			move(card, from);
+
+			if(result == FOUND) {
+				solutionCards[played] = card;
+				solutionCells[played] = to;
+				return FOUND;
+			}
+			next = Math.min(next, result);
+		}
+		return next;
+	}
+
+	private void move(int card, int to) {
+		grid[cells[card]] = 0;
+		grid[to] = card + 1;
+		cells[card] = to;
+	}
+
+	/**
+	 * Lists the legal moves of the current board: each card without hint may go to an empty cell
+	 * next to every group of cards it leaves.
+	 * @param buffer where to write the moves, as the card index in the upper half then the destination cell.
+	 * @return the number of moves.
+	 */
+	private int generateMoves(long[] buffer, int lastCard) {
+		int count = 0;
+		for(int card = 0; card < cardCount; card++) {
+			if(!movable[card] || card == lastCard) continue;
+
+			int from = cells[card];
+			grid[from] = 0;
+			int groupCount = labelGroups(card);
+			int everyGroup = (1 << groupCount) - 1;
+
+			// Each empty cell next to a card, once.
+			stamp++;
+			cellStamps[from] = stamp;
+			for(int other = 0; other < cardCount; other++) {
+				if(other == card) continue;
+				for(int direction = 0; direction < 4; direction++) {
+					int cell = cells[other] + DIRECTION_X[direction] + DIRECTION_Y[direction]*width;
+					if(grid[cell] != 0 || cellStamps[cell] == stamp) continue;
+					cellStamps[cell] = stamp;
+
+					int touched = 0;
+					for(int around = 0; around < 4; around++) {
+						int neighbor = grid[cell + DIRECTION_X[around] + DIRECTION_Y[around]*width];
+						if(neighbor != 0) touched |= 1 << groups[neighbor - 1];
+					}
+					if(touched == everyGroup) {
+						buffer[count++] = (long) card << 32 | cell;
+					}
+				}
+			}
+			grid[from] = card + 1;
+		}
+		return count;
+	}
+
+	/**
+	 * Splits the cards but the lifted one in the groups they form, with a Breadth-First-Search from each card next to it.
+	 * @return the number of groups, at most 4 since each one is next to the lifted card.
+	 */
+	private int labelGroups(int lifted) {
+		for(int i = 0; i < cardCount; i++) {
+			groups[i] = -1;
+		}
+		int groupCount = 0;
+		for(int direction = 0; direction < 4; direction++) {
+			int start = grid[cells[lifted] + DIRECTION_X[direction] + DIRECTION_Y[direction]*width] - 1;
+			if(start == -1 || groups[start] != -1) continue;
+
+			int head = 0, tail = 0;
+			queue[tail++] = start;
+			groups[start] = groupCount;
+			while(head < tail) {
+				int card = queue[head++];
+				for(int around = 0; around < 4; around++) {
+					int neighbor = grid[cells[card] + DIRECTION_X[around] + DIRECTION_Y[around]*width] - 1;
+					if(neighbor != -1 && groups[neighbor] == -1) {
+						groups[neighbor] = groupCount;
+						queue[tail++] = neighbor;
+					}
+				}
+			}
+			groupCount++;
+		}
+		return groupCount;
+	}
+
+	/**
+	 * @return a lower bound of the moves left: for each family with c groups, ceil((c-1)/4). 0 once every family is reunited.
+	 */
+	private int heuristic() {
+		// Union-find joining each card to the cards of its family on its right and below.
+		for(int i = 0; i < cardCount; i++) {
+			parents[i] = i;
+		}
+		for(int family = 0; family < familyCount; family++) {
+			groupsPerFamily[family] = 0;
+		}
+		for(int i = 0; i < cardCount; i++) {
+			groupsPerFamily[families[i]]++;
+		}
+		for(int i = 0; i < cardCount; i++) {
+			for(int direction = 0; direction < 4; direction += 2) {
+				int neighbor = grid[cells[i] + DIRECTION_X[direction] + DIRECTION_Y[direction]*width] - 1;
+				if(neighbor != -1 && families[neighbor] == families[i]) {
+					int a = find(i), b = find(neighbor);
+					if(a != b) {
+						parents[a] = b;
+						groupsPerFamily[families[i]]--;
+					}
+				}
+			}
+		}
+
+		int estimate = 0;
+		for(int family = 0; family < familyCount; family++) {
+			estimate += (groupsPerFamily[family] - 1 + 3) / 4;
+		}
+		return estimate;
+	}
+
+	private int find(int i) {
+		while(parents[i] != i) {
+			parents[i] = parents[parents[i]];
+			i = parents[i];
+		}
+		return i;
+	}
+
+	/**
+	 * Looks the current board up in the transposition table, and records it.
+	 * @param played the moves played to reach the board.
+	 * @return false if the board was already reached with as few moves in this search, its moves being searched already.
+	 */
+	private boolean visit(int played) {
+		computeKey();
+		long hash = 0;
+		for(long word : key) {
+			hash = (hash ^ word) * 0x9E3779B97F4A7C15L;
+		}
+		int home = (int) (hash >>> 32) & (tableCapacity - 1);
+
+		int free = -1;
+		for(int probe = 0; probe < PROBES; probe++) {
+			int slot = (home + probe) & (tableCapacity - 1);
+			if(tableSearches[slot] != search) {
+				if(free == -1) free = slot;
+				continue;
+			}
+			if(matches(slot)) {
+				if(tableMoves[slot] <= played) return false;
+				tableMoves[slot] = played;
+				return true;
+			}
+		}
+
+		// Replaces the home slot once the table is full, forgetting a board only costs searching it again.
+		int slot = free != -1 ? free : home;
+		tableSearches[slot] = search;
+		tableMoves[slot] = played;
+		System.arraycopy(key, 0, tableKeys, slot * keyWords, keyWords);
+		return true;
+	}
+
+	private boolean matches(int slot) {
+		for(int word = 0; word < keyWords; word++) {
+			if(tableKeys[slot * keyWords + word] != key[word]) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Packs the board up to translation: the cells of the cards relative to the deck's corner,
+	 * sorted within each class so that swapping interchangeable cards gives the same key.
+	 */
+	private void computeKey() {
+		int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+		for(int i = 0; i < cardCount; i++) {
+			minX = Math.min(minX, cells[i] % width);
+			minY = Math.min(minY, cells[i] / width);
+		}
+
+		// Sorts the codes by class then by code: cards are few, so an insertion sort does.
+		for(int i = 0; i < cardCount; i++) {
+			long code = (long) classes[i] << 32 | ((cells[i] / width - minY) * cardCount + cells[i] % width - minX);
+			int j = i;
+			for(; j > 0 && classCodes[j - 1] > code; j--) {
+				classCodes[j] = classCodes[j - 1];
+			}
+			classCodes[j] = code;
+		}
+
+		for(int word = 0; word < keyWords; word++) {
+			key[word] = 0;
+		}
+		for(int i = 0; i < cardCount; i++) {
+			long code = classCodes[i] & 0xFFFFFFFFL;
+			int bit = i * codeBits;
+			key[bit / 64] |= code << (bit % 64);
+			if(bit % 64 + codeBits > 64) {
+				key[bit / 64 + 1] |= code >>> (64 - bit % 64);
+			}
+		}
+	}
+
+	/**
+	 * Gives the moves of the last solution found, in the coords of the storage as they would be played one after another:
+	 * the board being centered after each move, as {@link fr.qmf.yokai.game.GameEngine#move(int, int, int, int)} does.
+	 * @return the moves, see {@link Action#move(int, int, int, int)}, or null if no solution was found.
+	 */
+	public long[] getSolution() {
+		if(solutionLength == -1) return null;
+
+		// Plays the solution again from the start on a copy of the storage, to follow the centering.
+		int[] at = solutionStart.clone();
+		GameStorage game = new GameStorage(storage);
+		int offsetX = startX[0] - at[0] % solutionWidth, offsetY = startY[0] - at[0] / solutionWidth;
+		long[] solution = new long[solutionLength];
+		for(int m = 0; m < solutionLength; m++) {
+			int card = solutionCards[m];
+			int fromX = at[card] % solutionWidth + offsetX, fromY = at[card] / solutionWidth + offsetY;
+			int toX = solutionCells[m] % solutionWidth + offsetX, toY = solutionCells[m] / solutionWidth + offsetY;
+			solution[m] = Action.move(fromX, fromY, toX, toY);
+
+			at[card] = solutionCells[m];
+			game.setCardMoving(fromX, fromY, true);
+			game.moveCard(fromX, fromY, toX, toY);
+			int[] centerOffset = game.centerBoard();
+			offsetX += centerOffset[0];
+			offsetY += centerOffset[1];
+		}
+		return solution;
+	}
+
+	/**
+	 * @return the number of boards searched by the last call to {@link #solve(int)}.
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Solves random deals and prints how many moves they take and how fast they are searched.
+	 * @param args the number of deals, 100 by default, and the most moves to search for, 8 by default.
+	 */
+	public static void main(String[] args) {
+		int deals = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+		int maxMoves = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+		SplittableRandom random = new SplittableRandom(0);
+
+		int[] counts = new int[maxMoves + 2];
+		long nodes = 0;
+		long start = System.nanoTime();
+		for(int d = 0; d < deals; d++) {
+			GameStorage storage = new GameStorage();
+			storage.init(Variant.CLASSIC, random.nextLong());
+			MoveSolver solver = new MoveSolver(storage);
+			int moves = solver.solve(maxMoves);
+			counts[moves == -1 ? maxMoves + 1 : moves]++;
+			nodes += solver.getNodes();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		for(int moves = 0; moves <= maxMoves; moves++) {
+			System.out.printf("%2d moves: %d%n", moves, counts[moves]);
+		}
+		System.out.printf("More: %d%n", counts[maxMoves + 1]);
+		System.out.printf("%d boards in %.2fs: %.0f boards/s%n", nodes, seconds, nodes / seconds);
+	}
+
+}
@@ -5,9 +5,8 @@ import java.awt.event.KeyListener;
 import java.io.File;
 
 import fr.qmf.yokai.YokaiGame;
-import fr.qmf.yokai.game.Card;
-import fr.qmf.yokai.game.GameStorage;
 import fr.qmf.yokai.game.gui.layers.GameLayer;
+import fr.qmf.yokai.game.gui.layers.MainTitleLayer;
 import fr.qmf.yokai.ui.Window;
 
 /**
@@ -37,28 +36,24 @@ public class KeyboardCallback implements KeyListener {
 
 	@Override
 	public void keyReleased(KeyEvent e) {
+		if(e.getKeyCode() == KeyEvent.VK_J && (window.getCurrentLayer() instanceof GameLayer || window.getCurrentLayer() instanceof MainTitleLayer)) {
+			game.requestRecover();
+		}
 		if(window.getCurrentLayer() instanceof GameLayer) {
 			if(e.getKeyCode() == KeyEvent.VK_ESCAPE) {
 				game.setPaused(!game.isPaused());
 			}
 			if(e.getKeyCode() == KeyEvent.VK_S) {
-				game.getGameStorage().save(new File("state.save"));
+				game.requestSave(new File("state.save").toPath());
 			}
 			if(e.getKeyCode() == KeyEvent.VK_L) {
-				game.setGameStorage(GameStorage.load(new File("state.save")));
+				game.requestLoad(new File("state.save").toPath());
 			}
-			if(e.getKeyCode() == KeyEvent.VK_ENTER) {
-				game.getGameStorage().setCurrentStage(game.getGameStorage().getCurrentStage().getNextStage());
+			if(e.getKeyCode() == KeyEvent.VK_U) {
+				game.requestUndo();
 			}
-			if(e.getKeyCode() == KeyEvent.VK_CONTROL) {
-				for(int i = 0; i < GameStorage.BOARD_LENGTH; i++) {
-					for(int j = 0; j < GameStorage.BOARD_LENGTH; j++) {
-						Card card = game.getGameStorage().getBoard()[i][j];
-						if(card != null) {
-							card.flip();
-						}
-					}
-				}
+			if(e.getKeyCode() == KeyEvent.VK_R) {
+				game.requestRedo();
 			}
 		}
 	}
@@ -7,6 +7,7 @@ import java.util.Map;
 import javax.imageio.ImageIO;
 
 import fr.qmf.yokai.Main;
+import fr.qmf.yokai.game.YokaiType;
 
 /**
  * Textures loads textures from the jar when needed and caches them for later use.
@@ -17,6 +18,10 @@ public class Textures {
 	
 	private static Map<String, BufferedImage> textures = new HashMap<>();
 	
+	// Textures of the cards and of the hints, indexed by YokaiType ordinal and by YokaiType bitmask.
+	private static final BufferedImage[] cardTextures = new BufferedImage[YokaiType.values().length];
+	private static final BufferedImage[] hintTextures = new BufferedImage[1 << YokaiType.values().length];
+	
 	public static BufferedImage getTexture(String path) {
 		if(!textures.containsKey(path)) {
 			try {
@@ -29,5 +34,32 @@ public class Textures {
 		}
 		return textures.get(path);
 	}
+	
+	/**
+	 * Gets the face of the cards of a YokaiType with a plain array lookup, to be used when drawing every frame.
+	 * @param type
+	 * @return the texture of the card.
+	 */
+	public static BufferedImage getCardTexture(YokaiType type) {
+		BufferedImage texture = cardTextures[type.ordinal()];
+		if(texture == null) {
+			texture = cardTextures[type.ordinal()] = getTexture("cards/" + type.getColor());
+		}
+		return texture;
+	}
+	
+	/**
+	 * Gets the texture of a hint with a plain array lookup, to be used when drawing every frame.
+	 * @param hint a bitmask of families, not 0.
+	 * @return the texture of the hint.
+	 */
+	public static BufferedImage getHintTexture(long hint) {
+		int typeMask = YokaiType.getTypeMask(hint);
+		BufferedImage texture = hintTextures[typeMask];
+		if(texture == null) {
+			texture = hintTextures[typeMask] = getTexture("hints/" + YokaiType.getHintName(typeMask));
+		}
+		return texture;
+	}
 
 }
@@ -1,7 +1,7 @@
 package fr.qmf.yokai.io.audio;
 
 import java.util.Arrays;
-import java.util.Random;
+import java.util.SplittableRandom;
 
 import fr.qmf.yokai.Tickable;
 
@@ -15,14 +15,14 @@ public class SoundManager implements Tickable {
 	public static final int SIMULTANEOUS_CLIPS = 256;
 	private float DEFAULT_SOUND_VALUE = 1f;
 	private Sound[] sounds = new Sound[SIMULTANEOUS_CLIPS];
-	private Random random;
+	private SplittableRandom random;
 
 	private int mainMusicThreshold;
 	
 	private float[] soundTypeVolumes = new float[SoundType.values().length];
 	private Sound mainMusic;
 	
-	public SoundManager(Random random) {
+	public SoundManager(SplittableRandom random) {
 		this.random = random;
 		Arrays.fill(soundTypeVolumes, DEFAULT_SOUND_VALUE);
 	}
@@ -0,0 +1,46 @@
+package fr.qmf.yokai.io.save;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads values packed by a {@link BitWriter}.
+ * @author LeFlo
+ *
+ */
+public class BitReader {
+
+	private final ByteBuffer buffer;
+	private int current; // Bits of the byte being read.
+	private int left; // Number of bits of current not read yet.
+
+	public BitReader(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	/**
+	 * @param width the number of bits of the value, up to 64.
+	 * @return the value.
+	 */
+	public long read(int width) {
+		long value = 0;
+		for(int i = 0; i < width; i++) {
+			if(left == 0) {
+				current = buffer.get() & 0xFF;
+				left = 8;
+			}
+			value |= (long) (current & 1) << i;
+			current >>>= 1;
+			left--;
+		}
+		return value;
+	}
+
+	/**
+	 * Skips the rest of the byte being read, as {@link BitWriter#flush()} padded it.
+	 */
+	public void align() {
+		current = 0;
+		left = 0;
+	}
+
+}
@@ -0,0 +1,46 @@
+package fr.qmf.yokai.io.save;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Packs values of any number of bits into a buffer, least significant bits first.
+ * @author LeFlo
+ *
+ */
+public class BitWriter {
+
+	private final ByteBuffer buffer;
+	private int current; // Bits not written yet.
+	private int filled; // Number of bits in current.
+
+	public BitWriter(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	/**
+	 * @param value
+	 * @param width the number of low bits of the value to write, up to 64.
+	 */
+	public void write(long value, int width) {
+		for(int i = 0; i < width; i++) {
+			current |= (int) ((value >>> i) & 1) << filled;
+			if(++filled == 8) {
+				buffer.put((byte) current);
+				current = 0;
+				filled = 0;
+			}
+		}
+	}
+
+	/**
+	 * Writes the last bits, the rest of their byte being 0.
+	 */
+	public void flush() {
+		if(filled > 0) {
+			buffer.put((byte) current);
+			current = 0;
+			filled = 0;
+		}
+	}
+
+}
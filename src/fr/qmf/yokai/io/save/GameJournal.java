@@ -0,0 +1,399 @@
+package fr.qmf.yokai.io.save;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.zip.CRC32;
+
+import fr.qmf.yokai.game.Action;
+import fr.qmf.yokai.game.GameEngine;
+import fr.qmf.yokai.game.GameListener;
+import fr.qmf.yokai.game.GameStorage;
+
+/**
+ * Journals a game as it is played: the game it starts from, then every action applied or undone,
+ * appended to a file a few bytes each. Listening to the {@link GameEngine} of the game only encodes the actions;
+ * the game loop commits them once a tick, see {@link #commit()}, which writes every action since the last commit
+ * on the {@link SaveWriter} as one frame followed by a single sync to the disk.
+ * The journal is only used on the game loop, as is the engine it listens to, so the buffers of the actions take no lock:
+ * the writer is only handed the frames built from them.
+ * Every few actions a checkpoint, the game as saved by {@link SaveFile}, replaces the previous one next to the journal,
+ * so that recovering only replays the actions after it, see {@link #recover()}.
+ * The journal itself is never cut, so it is the whole record of the game.
+ * <br>
+ * The journal is a header, a magic number and the version of the format, then frames:
+ * the kind of the frame, the length of its content, its content, then the CRC32 of all three.
+ * A crash may leave the last frame torn: reading stops at the first frame which does not check.
+ * Actions are their type on a byte followed by their arguments, zigzag encoded on a byte or two for coords.
+ * Every value is little-endian.
+ * @author LeFlo
+ *
+ */
+public class GameJournal implements GameListener {
+
+	public static final int MAGIC = 0x4A4B4F59; // "YOKJ" once little-endian.
+	public static final short VERSION = 1;
+	public static final int DEFAULT_CHECKPOINT_INTERVAL = 16;
+
+	// Kinds of frames.
+	private static final byte GAME = 0; // The game the journal starts from, as a save.
+	private static final byte ACTIONS = 1; // Actions applied or undone since the previous frame.
+	private static final byte CHECKPOINT = 2; // The number of actions then the game once they are applied, as a save.
+
+	private static final int UNDO = 15; // Type of the entries undoing the last action, apart from the types of Action.
+	private static final long UNDONE = -1; // Entry undoing the last action once read, every action being positive.
+	private static final int[] ARGUMENT_COUNTS = {4, 4, 0, 3, 0}; // Arguments of each type of Action.
+
+	private static final int HEADER_LENGTH = 6;
+	private static final int INITIAL_CAPACITY = 256;
+
+	private final Path path, checkpointPath;
+	private final SaveWriter writer;
+	private final int checkpointInterval;
+
+	private GameStorage storage; // Game journaled, null when none is.
+	private long actionCount; // Actions journaled, committed or not.
+	private long checkpointCount; // Actions the last checkpoint asked for holds.
+	// Actions not committed yet, and the ones being committed, swapped at each commit.
+	private ByteBuffer pending, committing;
+	private CompletableFuture<?> commit; // Writes submitted and not known to be done, null once they are.
+
+	// Only used by the writer, or once a recovery is done.
+	private FileChannel channel;
+	private GameStorage recoveredGame;
+	private long recoveredCount;
+
+	/**
+	 * @param path the journal, the checkpoints being next to it.
+	 * @param writer where the files are written, which also gives the order of the writes.
+	 * @param checkpointInterval the number of actions between two checkpoints.
+	 */
+	public GameJournal(Path path, SaveWriter writer, int checkpointInterval) {
+		this.path = path;
+		this.checkpointPath = path.resolveSibling(path.getFileName() + ".checkpoint");
+		this.writer = writer;
+		this.checkpointInterval = checkpointInterval;
+		pending = ByteBuffer.allocate(INITIAL_CAPACITY).order(ByteOrder.LITTLE_ENDIAN);
+		committing = ByteBuffer.allocate(INITIAL_CAPACITY).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Starts journaling a game, replacing the previous journal, unless it is the game just recovered from it
+	 * which is journaled on. The actions must then come from an engine of the game this journal listens to.
+	 * @param storage
+	 */
+	public void start(GameStorage storage) {
+		if(storage == this.storage) return;
+		detach();
+		this.storage = storage;
+		if(storage == recoveredGame) {
+			actionCount = checkpointCount = recoveredCount;
+			recoveredGame = null;
+			return;
+		}
+		actionCount = checkpointCount = 0;
+
+		GameStorage snapshot = storage.fork();
+		submit(() -> {
+			close();
+			channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+			ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC).putShort(VERSION).flip();
+			write(channel, header);
+			write(channel, frame(GAME, SaveFile.encode(snapshot)));
+			channel.force(false);
+			Files.deleteIfExists(checkpointPath);
+			return null;
+		});
+	}
+
+	/**
+	 * Commits the actions journaled since the last commit, and asks for a checkpoint if it is time.
+	 * Nothing is written while the last commit is not done: the actions keep piling up for the next one,
+	 * so a slow disk only makes fewer and larger commits. To be called on the game loop, e.g. once a tick.
+	 */
+	public void commit() {
+		if(commit != null) {
+			if(!commit.isDone()) return;
+			report(commit);
+			commit = null;
+		}
+		if(storage == null) return;
+
+		if(pending.position() > 0) {
+			ByteBuffer group = pending;
+			group.flip();
+			pending = committing;
+			pending.clear();
+			committing = group;
+			submit(() -> {
+				write(channel, frame(ACTIONS, group));
+				// Only the length of the file changes beside its content, which a data sync writes too.
+				channel.force(false);
+				return null;
+			});
+		}
+
+		if(actionCount - checkpointCount >= checkpointInterval) {
+			long count = checkpointCount = actionCount;
+			GameStorage snapshot = storage.fork();
+			submit(() -> {
+				ByteBuffer save = SaveFile.encode(snapshot);
+				ByteBuffer content = ByteBuffer.allocate(8 + save.remaining()).order(ByteOrder.LITTLE_ENDIAN);
+				content.putLong(count).put(save).flip();
+				ByteBuffer checkpoint = frame(CHECKPOINT, content);
+				ByteBuffer file = ByteBuffer.allocate(HEADER_LENGTH + checkpoint.remaining()).order(ByteOrder.LITTLE_ENDIAN);
+				file.putInt(MAGIC).putShort(VERSION).put(checkpoint).flip();
+				SaveFile.replace(checkpointPath, file);
+				return null;
+			});
+		}
+	}
+
+	/**
+	 * Starts reading back the game of the journal: the last checkpoint with the actions after it applied,
+	 * or the game the journal starts from with every action applied if the checkpoint does not check or cannot be replayed from.
+	 * The game journaled until now is not any longer, and once read the journal goes on with the game read,
+	 * see {@link #start(GameStorage)}, after cutting the frame a crash may have torn.
+	 * @return the game, once read, or the IOException it failed with as cause.
+	 */
+	public CompletableFuture<GameStorage> recover() {
+		detach();
+		storage = null;
+		return writer.submit(this::read);
+	}
+
+	/**
+	 * @return true if a journal was left by a game, which {@link #recover()} may read back before a new game replaces it.
+	 */
+	public boolean exists() {
+		return Files.exists(path);
+	}
+
+	@Override
+	public void actionApplied(long action) {
+		if(storage == null) return;
+		int type = Action.getType(action);
+		ensureCapacity(1 + 3*ARGUMENT_COUNTS[type]);
+		pending.put((byte) type);
+		for(int i = 0; i < ARGUMENT_COUNTS[type]; i++) {
+			putArgument(pending, Action.getArgument(action, i));
+		}
+		actionCount++;
+	}
+
+	@Override
+	public void actionUndone() {
+		if(storage == null) return;
+		ensureCapacity(1);
+		pending.put((byte) UNDO);
+		actionCount++;
+	}
+
+	/**
+	 * Commits what is left of the game journaled, so that the next frames go to another journal.
+	 */
+	private void detach() {
+		if(storage == null || pending.position() == 0) return;
+		// The buffer being committed may still be in use.
+		ByteBuffer group = ByteBuffer.allocate(pending.position()).order(ByteOrder.LITTLE_ENDIAN);
+		pending.flip();
+		group.put(pending).flip();
+		pending.clear();
+		submit(() -> {
+			write(channel, frame(ACTIONS, group));
+			channel.force(false);
+			return null;
+		});
+	}
+
+	private void submit(SaveWriter.Task<Void> task) {
+		CompletableFuture<Void> write = writer.submit(task);
+		commit = commit == null ? write : CompletableFuture.allOf(commit, write);
+	}
+
+	private static void report(CompletableFuture<?> commit) {
+		try {
+			commit.join();
+		} catch (CompletionException e) {
+			e.getCause().printStackTrace();
+		}
+	}
+
+	private void ensureCapacity(int length) {
+		if(pending.remaining() < length) {
+			ByteBuffer grown = ByteBuffer.allocate(pending.capacity() * 2).order(ByteOrder.LITTLE_ENDIAN);
+			pending.flip();
+			pending = grown.put(pending);
+		}
+	}
+
+	/**
+	 * Reads the journal and the checkpoint, on the writer.
+	 */
+	private GameStorage read() throws IOException {
+		close();
+		ByteBuffer buffer = SaveFile.read(path).order(ByteOrder.LITTLE_ENDIAN);
+		if(buffer.remaining() < HEADER_LENGTH || buffer.getInt() != MAGIC) throw new IOException("Not a journal");
+		short version = buffer.getShort();
+		if(version < 1 || version > VERSION) throw new IOException("Unknown journal version " + version);
+
+		GameStorage game = null;
+		long[] entries = new long[INITIAL_CAPACITY];
+		int entryCount = 0;
+		int valid = buffer.position();
+		for(ByteBuffer content = nextFrame(buffer); content != null; content = nextFrame(buffer)) {
+			byte kind = buffer.get(valid);
+			if(kind == GAME && game == null) {
+				game = SaveFile.decode(content);
+			} else if(kind == ACTIONS && game != null) {
+				while(content.hasRemaining()) {
+					if(entryCount == entries.length) entries = Arrays.copyOf(entries, 2*entryCount);
+					entries[entryCount++] = readEntry(content);
+				}
+			} else {
+				break;
+			}
+			valid = buffer.position();
+		}
+		if(game == null) throw new IOException("The journal holds no game");
+
+		GameStorage recovered = null;
+		GameStorage checkpoint = null;
+		long checkpointCount = 0;
+		try {
+			ByteBuffer file = SaveFile.read(checkpointPath).order(ByteOrder.LITTLE_ENDIAN);
+			if(file.remaining() >= HEADER_LENGTH && file.getInt() == MAGIC && file.getShort() == VERSION) {
+				ByteBuffer content = nextFrame(file);
+				if(content != null && file.get(HEADER_LENGTH) == CHECKPOINT) {
+					checkpointCount = content.getLong();
+					checkpoint = SaveFile.decode(content);
+				}
+			}
+		} catch(IOException e) {
+			// No checkpoint to start from, or a corrupted one: the whole journal is replayed.
+		}
+		if(checkpoint != null && checkpointCount <= entryCount && replay(checkpoint, entries, (int) checkpointCount, entryCount)) {
+			recovered = checkpoint;
+		} else if(replay(game, entries, 0, entryCount)) {
+			recovered = game;
+		} else {
+			throw new IOException("The actions of the journal cannot be replayed");
+		}
+
+		// Cuts the torn frame, so that the next ones follow the valid ones.
+		channel = FileChannel.open(path, StandardOpenOption.WRITE);
+		channel.truncate(valid);
+		channel.position(valid);
+		channel.force(false);
+		recoveredGame = recovered;
+		recoveredCount = entryCount;
+		return recovered;
+	}
+
+	/**
+	 * @return true if every entry could be applied to the game.
+	 */
+	private static boolean replay(GameStorage storage, long[] entries, int from, int to) {
+		// Keeps every action, so that any of them may be undone.
+		GameEngine engine = new GameEngine(storage, Math.max(to - from, 1));
+		for(int i = from; i < to; i++) {
+			boolean done = entries[i] == UNDONE ? engine.undo() : engine.apply(entries[i]);
+			if(!done) return false;
+		}
+		return true;
+	}
+
+	private void close() throws IOException {
+		if(channel != null) {
+			channel.close();
+			channel = null;
+		}
+	}
+
+	/**
+	 * @return the kind, the length, the content then the CRC32 of a frame.
+	 */
+	private static ByteBuffer frame(byte kind, ByteBuffer content) {
+		ByteBuffer frame = ByteBuffer.allocate(9 + content.remaining()).order(ByteOrder.LITTLE_ENDIAN);
+		frame.put(kind).putInt(content.remaining()).put(content);
+		CRC32 crc = new CRC32();
+		crc.update(frame.array(), 0, frame.position());
+		frame.putInt((int) crc.getValue()).flip();
+		return frame;
+	}
+
+	/**
+	 * Steps over the next frame.
+	 * @return its content, or null if there is none or it does not check.
+	 */
+	private static ByteBuffer nextFrame(ByteBuffer buffer) {
+		int start = buffer.position();
+		if(buffer.remaining() < 9) return null;
+		int length = buffer.getInt(start + 1);
+		if(length < 0 || length > buffer.remaining() - 9) return null;
+		CRC32 crc = new CRC32();
+		crc.update(buffer.array(), buffer.arrayOffset() + start, 5 + length);
+		if((int) crc.getValue() != buffer.getInt(start + 5 + length)) return null;
+
+		ByteBuffer content = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		content.position(start + 5).limit(start + 5 + length);
+		buffer.position(start + 9 + length);
+		return content.slice().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static long readEntry(ByteBuffer content) throws IOException {
+		int type = content.get();
+		if(type == UNDO) return UNDONE;
+		if(type < 0 || type >= ARGUMENT_COUNTS.length) throw new IOException("Unknown action " + type + " in the journal");
+		int[] arguments = new int[4];
+		for(int i = 0; i < ARGUMENT_COUNTS[type]; i++) {
+			arguments[i] = getArgument(content);
+		}
+		switch(type) {
+		case Action.OBSERVE: return Action.observe(arguments[0], arguments[1], arguments[2], arguments[3]);
+		case Action.MOVE: return Action.move(arguments[0], arguments[1], arguments[2], arguments[3]);
+		case Action.DRAW_HINT: return Action.drawHint();
+		case Action.PLACE_HINT: return Action.placeHint(arguments[0], arguments[1], arguments[2]);
+		default: return Action.declarePeace();
+		}
+	}
+
+	/**
+	 * Writes an argument zigzag encoded, so that small negative coords take a byte too,
+	 * on 7 bits per byte, the high bit telling whether another byte follows.
+	 */
+	private static void putArgument(ByteBuffer buffer, int argument) {
+		int zigzag = (argument << 1) ^ (argument >> 31);
+		while((zigzag & ~0x7F) != 0) {
+			buffer.put((byte) (zigzag & 0x7F | 0x80));
+			zigzag >>>= 7;
+		}
+		buffer.put((byte) zigzag);
+	}
+
+	private static int getArgument(ByteBuffer buffer) throws IOException {
+		int zigzag = 0;
+		for(int shift = 0;; shift += 7) {
+			if(shift > 28) throw new IOException("Invalid argument in the journal");
+			byte b = buffer.get();
+			zigzag |= (b & 0x7F) << shift;
+			if(b >= 0) break;
+		}
+		return (zigzag >>> 1) ^ -(zigzag & 1);
+	}
+
+	private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while(buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+}
@@ -0,0 +1,201 @@
+package fr.qmf.yokai.io.save;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import fr.qmf.yokai.game.Card;
+import fr.qmf.yokai.game.GameStage;
+import fr.qmf.yokai.game.GameStorage;
+import fr.qmf.yokai.game.Player;
+import fr.qmf.yokai.game.Variant;
+import fr.qmf.yokai.game.YokaiType;
+
+/**
+ * Imports the saves made before {@link SaveFile}, which were GameStorage objects serialized by Java.
+ * The first of them held the board as an array of Card objects and hints as bytes: their classes are read
+ * into the mirrors below, then converted into a classic game without the cards they showed, see {@link GameStorage#write(ByteBuffer)}.
+ * The later ones, serialized from the current GameStorage, are read as they are.
+ * <br>
+ * Running this class converts the saves given as arguments in place.
+ * @author LeFlo
+ *
+ */
+public class LegacySaveImporter {
+
+	private static final String GAME_STORAGE = "fr.qmf.yokai.game.GameStorage";
+	private static final String CARD = "fr.qmf.yokai.game.Card";
+
+	private LegacySaveImporter() {}
+
+	/**
+	 * @param buffer the content of an old save, from its position to its limit.
+	 * @return the game saved.
+	 * @throws IOException if the save could not be read.
+	 */
+	public static GameStorage read(ByteBuffer buffer) throws IOException {
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		try(ObjectInputStream in = new LegacyObjectInputStream(new ByteArrayInputStream(bytes))) {
+			Object read = in.readObject();
+			if(read instanceof LegacyGameStorage) {
+				return convert((LegacyGameStorage) read);
+			}
+			if(read instanceof GameStorage) {
+				return (GameStorage) read;
+			}
+			throw new IOException("Not a save, found a " + read.getClass().getName());
+		} catch(ClassNotFoundException | ClassCastException e) {
+			throw new IOException("Not a save", e);
+		}
+	}
+
+	private static GameStorage convert(LegacyGameStorage legacy) throws IOException {
+		if(legacy.players == null || legacy.players.length != 2 || legacy.board == null || legacy.hints == null) {
+			throw new IOException("Incomplete save");
+		}
+		GameStorage storage = new GameStorage();
+		storage.initEmpty(Variant.CLASSIC, 0, legacy.players, 0);
+		if(legacy.currentPlayer != null && legacy.currentPlayer.getId() == 1) {
+			storage.switchPlayers();
+		}
+
+		for(int y = 0; y < legacy.board.length; y++) {
+			if(legacy.board[y] == null) continue;
+			for(int x = 0; x < legacy.board[y].length; x++) {
+				LegacyCard legacyCard = legacy.board[y][x];
+				if(legacyCard == null) continue;
+				Card card = new Card(legacyCard.type);
+				card.setShown(legacy.currentStage == GameStage.END);
+				storage.placeCard(x, y, card);
+				if(legacyCard.hint != 0) {
+					storage.setCardHint(x, y, convert(legacyCard.hint));
+				}
+			}
+		}
+
+		int hintCount = storage.getHints().length;
+		if(legacy.hints.length != hintCount) {
+			throw new IOException(legacy.hints.length + " hints saved for a classic game of " + hintCount);
+		}
+		for(int i = 0; i < hintCount; i++) {
+			storage.setHint(i, convert(legacy.hints[i]));
+		}
+		if(legacy.discoveredHints != null) {
+			for(int i = 0; i < legacy.discoveredHints.size(); i++) {
+				storage.addDiscoveredHint(convert(legacy.discoveredHints.get(i)));
+			}
+		}
+		if(legacy.placedHints != null) {
+			for(int i = 0; i < legacy.placedHints.size(); i++) {
+				storage.getPlacedHints().add(convert(legacy.placedHints.get(i)));
+			}
+		}
+
+		if(legacy.currentStage != null) {
+			storage.setCurrentStage(GameStorage.getSavedStage(legacy.currentStage));
+		}
+		storage.setScore(legacy.score);
+		return storage;
+	}
+
+	/**
+	 * Bit i of an old hint stood for the family 3 - i.
+	 */
+	private static long convert(byte legacyHint) {
+		long hint = 0;
+		for(int i = 0; i < 4; i++) {
+			if((legacyHint & (1 << i)) != 0) {
+				hint |= 1L << (3 - i);
+			}
+		}
+		return hint;
+	}
+
+	/**
+	 * Converts saves in place, e.g. <code>instant_win.save</code>.
+	 * @param files the paths of the saves.
+	 */
+	public static void main(String... files) {
+		for(String file : files) {
+			try {
+				GameStorage storage = SaveFile.load(new File(file).toPath());
+				SaveFile.save(storage, new File(file).toPath());
+				System.out.println("Converted " + file);
+			} catch(IOException e) {
+				System.err.println("Could not convert " + file + ": " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Reads the classes of the first saves as their mirrors, the board being what tells them apart.
+	 */
+	private static class LegacyObjectInputStream extends ObjectInputStream {
+
+		LegacyObjectInputStream(InputStream in) throws IOException {
+			super(in);
+		}
+
+		@Override
+		protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+			ObjectStreamClass descriptor = super.readClassDescriptor();
+			switch(descriptor.getName()) {
+			case GAME_STORAGE:
+				return descriptor.getField("board") != null ? ObjectStreamClass.lookup(LegacyGameStorage.class) : descriptor;
+			case CARD:
+				return ObjectStreamClass.lookup(LegacyCard.class);
+			case "[L" + CARD + ";":
+				return ObjectStreamClass.lookup(LegacyCard[].class);
+			case "[[L" + CARD + ";":
+				return ObjectStreamClass.lookup(LegacyCard[][].class);
+			default:
+				return descriptor;
+			}
+		}
+
+	}
+
+	/**
+	 * The fields of the first GameStorage, the board being indexed by y then x.
+	 */
+	private static class LegacyGameStorage implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private int cardsShown;
+		private int score;
+		private LegacyCard[][] board;
+		private int[] cardsShownCoords;
+		private Player currentPlayer;
+		private GameStage currentStage;
+		private List<Byte> discoveredHints;
+		private byte[] hints;
+		private List<Byte> placedHints;
+		private Player[] players;
+
+	}
+
+	/**
+	 * The fields of the first Card.
+	 */
+	private static class LegacyCard implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private boolean animated;
+		private double animationTime;
+		private byte hint;
+		private boolean moving;
+		private boolean shown;
+		private YokaiType type;
+
+	}
+
+}
@@ -0,0 +1,164 @@
+package fr.qmf.yokai.io.save;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import fr.qmf.yokai.game.GameStorage;
+
+/**
+ * The file a game is saved in: its magic number, the version of the format, the length of the game,
+ * the game as written by {@link GameStorage#write(ByteBuffer)}, then the CRC32 of everything before it.
+ * Every value is little-endian.
+ * A classic game takes about a hundred bytes, read or written with a single call to the channel.
+ * <br>
+ * Saves made before this format, serialized Java objects, are recognized by their own magic number
+ * and imported by {@link LegacySaveImporter}.
+ * @author LeFlo
+ *
+ */
+public class SaveFile {
+
+	public static final int MAGIC = 0x414B4F59; // "YOKA" once little-endian.
+	public static final short VERSION = 1;
+
+	private static final int HEADER_LENGTH = 10;
+	private static final int JAVA_SERIALIZATION_MAGIC = 0xACED0005;
+	private static final int INITIAL_CAPACITY = 512;
+
+	private SaveFile() {}
+
+	/**
+	 * @param storage
+	 * @return the content of the save of the game, from 0 to its limit.
+	 */
+	public static ByteBuffer encode(GameStorage storage) {
+		for(int capacity = INITIAL_CAPACITY;; capacity *= 2) {
+			ByteBuffer buffer = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+			try {
+				buffer.putInt(MAGIC);
+				buffer.putShort(VERSION);
+				buffer.putInt(0); // Length of the game, known once written.
+				storage.write(buffer);
+				buffer.putInt(HEADER_LENGTH - 4, buffer.position() - HEADER_LENGTH);
+				CRC32 crc = new CRC32();
+				crc.update(buffer.array(), 0, buffer.position());
+				buffer.putInt((int) crc.getValue());
+				buffer.flip();
+				return buffer;
+			} catch(BufferOverflowException e) {
+				// Games this large are rare, the buffer is only grown then.
+			}
+		}
+	}
+
+	/**
+	 * @param buffer the content of a save, from its position to its limit.
+	 * @return the game saved.
+	 * @throws IOException if the save is not one or is corrupted.
+	 */
+	public static GameStorage decode(ByteBuffer buffer) throws IOException {
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		int start = buffer.position();
+		if(buffer.remaining() < HEADER_LENGTH + 4 || buffer.getInt() != MAGIC) {
+			throw new IOException("Not a save");
+		}
+		short version = buffer.getShort();
+		if(version < 1 || version > VERSION) {
+			throw new IOException("Unknown save version " + version);
+		}
+		int length = buffer.getInt();
+		if(length < 0 || length > buffer.remaining() - 4) {
+			throw new IOException("Truncated save");
+		}
+		int end = buffer.position() + length;
+		CRC32 crc = new CRC32();
+		ByteBuffer checked = buffer.duplicate();
+		checked.position(start).limit(end);
+		crc.update(checked);
+		if((int) crc.getValue() != buffer.getInt(end)) {
+			throw new IOException("Corrupted save");
+		}
+		ByteBuffer game = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+		game.limit(length);
+		GameStorage storage = GameStorage.read(game);
+		if(game.hasRemaining()) {
+			throw new IOException("Corrupted save, " + game.remaining() + " bytes left");
+		}
+		buffer.position(end + 4);
+		return storage;
+	}
+
+	/**
+	 * Saves a game in a file, replacing it. The save is written to a temporary file next to it
+	 * then renamed over it, so the file is always either the previous save or the new one, never a torn one.
+	 * @param storage
+	 * @param path
+	 * @throws IOException
+	 */
+	public static void save(GameStorage storage, Path path) throws IOException {
+		replace(path, encode(storage));
+	}
+
+	/**
+	 * Replaces a file atomically, see {@link #save(GameStorage, Path)}.
+	 * @param path
+	 * @param buffer the new content of the file, from its position to its limit.
+	 * @throws IOException
+	 */
+	static void replace(Path path, ByteBuffer buffer) throws IOException {
+		Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+		try(FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while(buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			// On disk before the rename, or a crash could leave the new name on an empty file.
+			channel.force(true);
+		}
+		try {
+			Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch(AtomicMoveNotSupportedException e) {
+			Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Loads a game from a file, importing it if saved before this format.
+	 * @param path
+	 * @return the game saved.
+	 * @throws IOException if the file could not be read or is not a save.
+	 */
+	public static GameStorage load(Path path) throws IOException {
+		ByteBuffer buffer = read(path);
+		if(buffer.remaining() >= 4 && buffer.getInt(0) == JAVA_SERIALIZATION_MAGIC) {
+			return LegacySaveImporter.read(buffer);
+		}
+		return decode(buffer);
+	}
+
+	/**
+	 * @param path
+	 * @return the whole content of the file, big-endian, from 0 to its limit.
+	 * @throws IOException
+	 */
+	static ByteBuffer read(Path path) throws IOException {
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if(size > Integer.MAX_VALUE) throw new IOException(path + " is " + size + " bytes long");
+			ByteBuffer buffer = ByteBuffer.allocate((int) size);
+			while(buffer.hasRemaining() && channel.read(buffer) != -1);
+			buffer.flip();
+			return buffer;
+		}
+	}
+
+}
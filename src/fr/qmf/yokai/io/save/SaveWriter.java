@@ -0,0 +1,76 @@
+package fr.qmf.yokai.io.save;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import fr.qmf.yokai.game.GameStorage;
+
+/**
+ * Saves and loads games on a thread of its own, so that the game loop never waits for the disk.
+ * Games are saved from snapshots, see {@link GameStorage#fork()}, taken on the game loop
+ * and never touched again but by the writer: the game may go on while its snapshot is written.
+ * Saves are written one after the other, in the order they were asked for.
+ * @author LeFlo
+ *
+ */
+public class SaveWriter {
+
+	private final ThreadPoolExecutor executor;
+
+	public SaveWriter() {
+		// The thread stops once idle, so the writer costs nothing between saves.
+		executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+			Thread thread = new Thread(runnable, "SaveWriter");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Starts saving a game, see {@link SaveFile#save(GameStorage, Path)}.
+	 * @param snapshot a copy of the game only the writer uses from now on.
+	 * @param path
+	 * @return the path saved to, once written, or the IOException it failed with as cause.
+	 */
+	public CompletableFuture<Path> save(GameStorage snapshot, Path path) {
+		return submit(() -> {
+			SaveFile.save(snapshot, path);
+			return path;
+		});
+	}
+
+	/**
+	 * Starts loading a game, see {@link SaveFile#load(Path)}.
+	 * @param path
+	 * @return the game, once read, or the IOException it failed with as cause.
+	 */
+	public CompletableFuture<GameStorage> load(Path path) {
+		return submit(() -> SaveFile.load(path));
+	}
+
+	/**
+	 * Runs a task on the writer, after the ones submitted before.
+	 * @param task
+	 * @return the result of the task, or the IOException it failed with as cause.
+	 */
+	<T> CompletableFuture<T> submit(Task<T> task) {
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return task.run();
+			} catch(IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}, executor);
+	}
+
+	interface Task<T> {
+		T run() throws IOException;
+	}
+
+}
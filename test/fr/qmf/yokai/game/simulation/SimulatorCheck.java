@@ -0,0 +1,60 @@
+package fr.qmf.yokai.game.simulation;
+
+import java.util.Arrays;
+
+import fr.qmf.yokai.game.Ending;
+import fr.qmf.yokai.game.Variant;
+
+/**
+ * Checks that the simulations are replayed from their seed and that the rules still score them the same:
+ * a change of the rules or of the deal changes the scores below, which must then be checked and written again.
+ * Run it with assertions or not, it throws on the first failure.
+ * @author LeFlo
+ *
+ */
+public class SimulatorCheck {
+
+	private static final int GAMES = 200;
+	private static final int THREADS = 2;
+	private static final long SEED = 0;
+
+	// Number of games of each score from -1, for 200 classic games on 2 threads from seed 0.
+	private static final long[] GREEDY_SCORE_COUNTS = {79, 0, 0, 0, 0, 0, 0, 0, 1, 7, 0, 0, 7, 7, 0, 0, 8, 14,
+			0, 0, 9, 25, 0, 0, 19, 15, 0, 0, 6, 2, 0, 0, 1};
+	private static final long GREEDY_ACTIONS = 6258;
+	private static final long RANDOM_ACTIONS = 8400; // Every random game goes on until the last hint is placed.
+
+	public static void main(String[] args) {
+		Simulator greedy = new Simulator(Variant.CLASSIC, GreedyPolicy::new);
+		SimulationResult result = greedy.run(GAMES, THREADS, SEED);
+		check(Arrays.equals(getScoreCounts(result), GREEDY_SCORE_COUNTS),
+				"greedy scores " + Arrays.toString(getScoreCounts(result)));
+		check(result.getActions() == GREEDY_ACTIONS, "greedy actions " + result.getActions());
+		for(Ending ending : Ending.values()) {
+			check(result.getEndingCount(ending) > 0, "no greedy game ended as " + ending.getDescription());
+		}
+
+		SimulationResult again = greedy.run(GAMES, THREADS, SEED);
+		check(Arrays.equals(getScoreCounts(again), getScoreCounts(result)) && again.getActions() == result.getActions(),
+				"the same seed played other games");
+
+		SimulationResult random = new Simulator(Variant.CLASSIC, RandomPolicy::new).run(GAMES, THREADS, SEED);
+		check(random.getEndingCount(Ending.DEFEAT) == GAMES, "random victories " + (GAMES - random.getEndingCount(Ending.DEFEAT)));
+		check(random.getActions() == RANDOM_ACTIONS, "random actions " + random.getActions());
+
+		System.out.println("Simulator checks passed");
+	}
+
+	private static long[] getScoreCounts(SimulationResult result) {
+		long[] counts = new long[result.getMaxScore() + 2];
+		for(int score = -1; score <= result.getMaxScore(); score++) {
+			counts[score + 1] = result.getScoreCount(score);
+		}
+		return counts;
+	}
+
+	private static void check(boolean condition, String failure) {
+		if(!condition) throw new AssertionError(failure);
+	}
+
+}
@@ -0,0 +1,142 @@
+package fr.qmf.yokai.game.solver;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import fr.qmf.yokai.game.Action;
+import fr.qmf.yokai.game.ActionGenerator;
+import fr.qmf.yokai.game.Card;
+import fr.qmf.yokai.game.GameEngine;
+import fr.qmf.yokai.game.GameStage;
+import fr.qmf.yokai.game.GameStorage;
+import fr.qmf.yokai.game.Player;
+import fr.qmf.yokai.game.Variant;
+
+/**
+ * Checks the solver against a breadth-first search of every move the engine allows, on boards small enough for it:
+ * both must find the same fewest moves, and the moves of the solver must be legal and reunite the families.
+ * Run it with assertions or not, it throws on the first failure.
+ * @author LeFlo
+ *
+ */
+public class MoveSolverCheck {
+
+	private static final Variant TWO_BY_TWO = new Variant(2, 2, 1);
+	private static final Variant THREE_BY_THREE = new Variant(3, 3, 1, 1);
+	private static final int DEALS = 8;
+	private static final int MAX_MOVES = 3;
+
+	public static void main(String[] args) {
+		// Families reunited already.
+		check(solveAndCompare(board(TWO_BY_TWO, "AA", "BB"), MAX_MOVES) == 0, "reunited board");
+		// A line alternating the families.
+		check(solveAndCompare(board(TWO_BY_TWO, "ABAB"), MAX_MOVES) == 2, "alternating line");
+		// Same, but the card between the two others of its family holds a hint and may not move.
+		GameStorage hinted = board(TWO_BY_TWO, "ABAB");
+		hinted.setCardHint(1, 0, 1L << 1);
+		check(solveAndCompare(hinted, MAX_MOVES) == 2, "alternating line with a hint");
+
+		SplittableRandom random = new SplittableRandom(0);
+		for(int deal = 0; deal < DEALS; deal++) {
+			GameStorage storage = new GameStorage();
+			storage.init(THREE_BY_THREE, random.nextLong());
+			solveAndCompare(storage, MAX_MOVES);
+		}
+
+		System.out.println("MoveSolver checks passed");
+	}
+
+	/**
+	 * @param rows the families of the cards, row after row: A for the first family, B for the second one..., a space for no card.
+	 * @return a board with these cards.
+	 */
+	private static GameStorage board(Variant variant, String... rows) {
+		GameStorage storage = new GameStorage();
+		storage.initEmpty(variant, 0, new Player[] {new Player(0, "Joueur 1"), new Player(1, "Joueur 2")}, 0);
+		for(int y = 0; y < rows.length; y++) {
+			for(int x = 0; x < rows[y].length(); x++) {
+				if(rows[y].charAt(x) != ' ') {
+					storage.placeCard(x, y, new Card(rows[y].charAt(x) - 'A'));
+				}
+			}
+		}
+		return storage;
+	}
+
+	/**
+	 * Solves a board, checks that the breadth-first search agrees and that the solution reunites the families.
+	 * @return the fewest moves, or -1 if it takes more than maxMoves.
+	 */
+	private static int solveAndCompare(GameStorage storage, int maxMoves) {
+		MoveSolver solver = new MoveSolver(storage);
+		int moves = solver.solve(maxMoves);
+		int expected = breadthFirstSearch(storage, maxMoves);
+		check(moves == expected, "the solver found " + moves + " moves instead of " + expected);
+		if(moves <= 0) return moves;
+
+		GameStorage game = new GameStorage(storage);
+		GameEngine engine = new GameEngine(game);
+		for(long move : solver.getSolution()) {
+			game.setCurrentStage(GameStage.MOVING);
+			check(engine.apply(move), "illegal move " + Action.toString(move));
+		}
+		check(game.getFamilyGroupCount() == game.getVariant().getFamilyCount(), "the solution does not reunite the families");
+		return moves;
+	}
+
+	/**
+	 * @return the fewest moves reuniting the families, playing every move the engine allows, or -1 if it takes more than maxMoves.
+	 */
+	private static int breadthFirstSearch(GameStorage start, int maxMoves) {
+		long[] actions = new long[1 << 12];
+		Set<String> seen = new HashSet<>();
+		ArrayDeque<GameStorage> queue = new ArrayDeque<>();
+		GameStorage first = new GameStorage(start);
+		first.setCurrentStage(GameStage.MOVING);
+		queue.add(first);
+		seen.add(getBoard(first));
+
+		for(int depth = 0; depth <= maxMoves; depth++) {
+			for(int size = queue.size(); size > 0; size--) {
+				GameStorage storage = queue.poll();
+				if(storage.getFamilyGroupCount() == storage.getVariant().getFamilyCount()) return depth;
+				if(depth == maxMoves) continue;
+
+				int count = new ActionGenerator(storage).generate(actions);
+				for(int i = 0; i < count; i++) {
+					if(Action.getType(actions[i]) != Action.MOVE) continue;
+					GameStorage next = new GameStorage(storage);
+					check(new GameEngine(next).apply(actions[i]), "illegal generated move " + Action.toString(actions[i]));
+					next.setCurrentStage(GameStage.MOVING);
+					if(seen.add(getBoard(next))) {
+						queue.add(next);
+					}
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the cards of the board up to translation, as a string to tell boards apart.
+	 */
+	private static String getBoard(GameStorage storage) {
+		List<String> cards = new ArrayList<>();
+		for(int i = 0; i < storage.getCardCount(); i++) {
+			Card card = storage.getCard(i);
+			cards.add(card.getFamily() + (card.hasHint() ? "h" : "") + "@" + (storage.getCardX(i) - storage.getMinCardX()) + "," + (storage.getCardY(i) - storage.getMinCardY()));
+		}
+		Collections.sort(cards);
+		return cards.toString();
+	}
+
+	private static void check(boolean condition, String failure) {
+		if(!condition) throw new AssertionError(failure);
+	}
+
+}